@@ -17,4 +17,18 @@ public class ProductAggregate {
   private List<RecommendationSummary> recommendations;
   private List<ReviewSummary> reviews;
   private ServiceAddresses serviceAddresses;
+  // true when the section could not be fetched and is empty or served from an earlier answer
+  private boolean recommendationsDegraded;
+  private boolean reviewsDegraded;
+
+  public ProductAggregate(
+          int productId,
+          String name,
+          int weight,
+          List<RecommendationSummary> recommendations,
+          List<ReviewSummary> reviews,
+          ServiceAddresses serviceAddresses) {
+
+    this(productId, name, weight, recommendations, reviews, serviceAddresses, false, false);
+  }
 }
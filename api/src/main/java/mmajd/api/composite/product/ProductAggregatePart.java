@@ -0,0 +1,36 @@
+package mmajd.api.composite.product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One element of a streamed product aggregate. The stream starts with the PRODUCT part,
+ * followed by one part per recommendation and review in the order they arrive.
+ * A DEGRADED part tells that the named section could not be streamed completely.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(setterPrefix = "")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ProductAggregatePart {
+
+  public enum Type {
+    PRODUCT,
+    RECOMMENDATION,
+    REVIEW,
+    DEGRADED
+  }
+
+  private Type type;
+  private int productId;
+  private String name;
+  private Integer weight;
+  private RecommendationSummary recommendation;
+  private ReviewSummary review;
+  private String section;
+  private String serviceAddress;
+}
@@ -6,8 +6,11 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @Tag(name = "ProductComposite", description = "REST API for composite product information.")
 public interface ProductCompositeService {
 
@@ -53,6 +56,45 @@ public interface ProductCompositeService {
           produces = "application/json")
   Mono<ProductAggregate> getProduct(@PathVariable int productId);
 
+  /**
+   * Sample usage: "curl -H 'Accept: application/x-ndjson' $HOST:$PORT/product-composite/1/stream".
+   *
+   * @param productId Id of the product
+   * @return the composite product info as a stream of parts, the product part first
+   */
+  @Operation(
+          summary = "${api.product-composite.stream-composite-product.description}",
+          description = "${api.product-composite.stream-composite-product.notes}")
+  @ApiResponses(value = {
+          @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+          @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+          @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+          @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+  })
+  @GetMapping(
+          value = "/product-composite/{productId}/stream",
+          produces = {"application/x-ndjson", "text/event-stream"})
+  Flux<ProductAggregatePart> streamProduct(@PathVariable int productId);
+
+  /**
+   * Sample usage: "curl $HOST:$PORT/product-composite?ids=1,2,3".
+   *
+   * @param productIds Ids of the products
+   * @return the composite product info of the products found, unknown ids are skipped
+   */
+  @Operation(
+          summary = "${api.product-composite.get-composite-products.description}",
+          description = "${api.product-composite.get-composite-products.notes}")
+  @ApiResponses(value = {
+          @ApiResponse(responseCode = "200", description = "${api.responseCodes.ok.description}"),
+          @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+          @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+  })
+  @GetMapping(
+          value = "/product-composite",
+          produces = "application/json")
+  Flux<ProductAggregate> getProducts(@RequestParam(value = "ids", required = true) List<Integer> productIds);
+
   /**
    * Sample usage: "curl -X DELETE $HOST:$PORT/product-composite/1".
    *
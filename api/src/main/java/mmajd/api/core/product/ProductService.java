@@ -1,8 +1,11 @@
 package mmajd.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
 
   /**
@@ -16,6 +19,17 @@ public interface ProductService {
     produces = "application/json")
   Mono<Product> getProduct(@PathVariable int productId);
 
+  /**
+   * Sample usage: "curl $HOST:$PORT/product?productIds=1,2,3".
+   *
+   * @param productIds ids of the products
+   * @return the products found, unknown ids are skipped
+   */
+  @GetMapping(
+    value = "/product",
+    produces = "application/json")
+  Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
   /**
    * Sample usage, see below.
    *
@@ -20,6 +20,19 @@ public interface RecommendationService {
   Flux<Recommendation> getRecommendations(
     @RequestParam(value = "productId", required = true) int productId);
 
+  /**
+   * Sample usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3".
+   *
+   * @param productIds ids of the products
+   * @return the recommendations of all the products
+   */
+  @GetMapping(
+    value = "/recommendation",
+    params = "productIds",
+    produces = "application/json")
+  Flux<Recommendation> getRecommendationsByProductIds(
+    @RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
   /**
    * Sample usage, see below.
    *
@@ -37,6 +50,23 @@ public interface RecommendationService {
   )
   Mono<Recommendation> createRecommendation(@RequestBody Recommendation body);
 
+  /**
+   * Sample usage, see below.
+   *
+   * curl -X POST $HOST:$POST/recommendation/batch \
+   *      -H "Content-Type: application/json" \
+   *      --data '[{"productId": 123, "recommendationId": 456, "author": "x", "rate": 5, "content":"x, y, z"}]'
+   *
+   * @param body json array of the new recommendations, written in one bulk insert
+   * @return newly created recommendations
+   */
+  @PostMapping(
+          value = "/recommendation/batch",
+          consumes = "application/json",
+          produces = "application/json"
+  )
+  Flux<Recommendation> createRecommendations(@RequestBody List<Recommendation> body);
+
 
   /**
    * Sample usage: "curl -X DELETE $HOST:$POST/recommendation?productId=1"
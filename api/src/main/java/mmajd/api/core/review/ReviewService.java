@@ -19,6 +19,18 @@ public interface ReviewService {
           produces = "application/json")
   Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
 
+  /**
+   * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3".
+   *
+   * @param productIds ids of the products
+   * @return the reviews of all the products
+   */
+  @GetMapping(
+          value = "/review",
+          params = "productIds",
+          produces = "application/json")
+  Flux<Review> getReviewsByProductIds(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
 
   /*
    * Sample usage, see below.
@@ -36,6 +48,22 @@ public interface ReviewService {
           produces = "application/json")
   Mono<Review> createReview(@RequestBody Review body);
 
+  /**
+   * Sample usage, see below.
+   *
+   * curl -X POST $HOST:$PORT/review/batch \
+   *   -H "Content-Type: application/json" --data \
+   *   '[{"productId":123,"reviewId":456,"author":"x","subject":"x, y, x","content":"x, y, z"}]'
+   *
+   * @param body json array of the new reviews, written in one transaction
+   * @return newly created reviews
+   */
+  @PostMapping(
+          value    = "/review/batch",
+          consumes = "application/json",
+          produces = "application/json")
+  Flux<Review> createReviews(@RequestBody List<Review> body);
+
   /**
    18a34,41
 
@@ -6,35 +6,62 @@ import lombok.Getter;
 import lombok.ToString;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
 
+/**
+ * Schema version 2 adds a unique event id, used by consumers to drop redelivered events, and the
+ * creation time as epoch millis. Version 1 events, without these fields, are read with
+ * schemaVersion 1 and no event id. createdAt is still written for version 1 consumers.
+ */
 @Getter
 @ToString
 public class Event <K, D> {
 
+    public static final int SCHEMA_VERSION = 2;
+
     public enum Type {
         CREATE,
+        // creates all entities in the batch, all belonging to the product given by the key
+        CREATE_BATCH,
         DELETE
     }
 
 
+    private final String eventId;
+    private final int schemaVersion;
+    private final long timestamp;
     private final Type eventType;
     private final K key;
     private final D data;
+    private final List<D> batch;
     private final ZonedDateTime createdAt;
 
 
     public Event() {
+        eventId = null;
+        schemaVersion = 1;
+        timestamp = 0;
         eventType = null;
         key = null;
         data = null;
+        batch = null;
         createdAt = null;
     }
 
     public Event(Type eventType, K key, D data) {
+        this(eventType, key, data, null);
+    }
+
+    public Event(Type eventType, K key, D data, List<D> batch) {
+        this.eventId = UUID.randomUUID().toString();
+        this.schemaVersion = SCHEMA_VERSION;
         this.eventType = eventType;
         this.key = key;
         this.data = data;
+        this.batch = batch;
         this.createdAt = ZonedDateTime.now();
+        this.timestamp = createdAt.toInstant().toEpochMilli();
     }
 
     @JsonSerialize(using = ZonedDateTimeSerializer.class)
@@ -16,8 +16,8 @@ import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import reactor.core.scheduler.Scheduler;
-import reactor.core.scheduler.Schedulers;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.messaging.SubscribableChannel;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -48,11 +48,6 @@ public class ProductCompositeConfig {
     @Value("${api.common.contact.email}")
     String apiContactEmail;
 
-    @Value("${app.threadPoolSize:10}")
-    Integer threadPoolSize;
-    @Value("${app.taskQueueSize:100}")
-    Integer taskQueueSize;
-
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeConfig.class);
 
     /**
@@ -80,10 +75,14 @@ public class ProductCompositeConfig {
     }
 
 
+    /**
+     * Kafka send results of the composite's producer bindings, see recordMetadataChannel
+     *
+     * @return the channel the event publisher completes Kafka acks from
+     */
     @Bean
-    public Scheduler publicEventScheduler() {
-        LOG.info("Creates a messagingScheduler with connectionPoolSize = {}", threadPoolSize);
-        return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "publish-pool");
+    public SubscribableChannel eventSendResults() {
+        return new DirectChannel();
     }
 
     @Autowired
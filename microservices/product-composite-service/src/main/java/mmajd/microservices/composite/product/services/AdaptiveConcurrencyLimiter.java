@@ -0,0 +1,110 @@
+package mmajd.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIMD concurrency limit driven by request round trip times. The limit grows by one while requests
+ * complete close to the baseline rtt and the limit is in use, and is cut by the backoff ratio when a
+ * request fails or its rtt exceeds the baseline by more than the tolerance.
+ * The baseline is the lowest rtt seen in the previous window of samples.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double rttTolerance;
+  private final int rttWindowSize;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private volatile double limit;
+
+  // guarded by this
+  private long baselineRttNanos = 0;
+  private long windowMinRttNanos = Long.MAX_VALUE;
+  private int windowSamples = 0;
+
+  public AdaptiveConcurrencyLimiter(
+          int initialLimit,
+          int minLimit,
+          int maxLimit,
+          double backoffRatio,
+          double rttTolerance,
+          int rttWindowSize) {
+
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.rttTolerance = rttTolerance;
+    this.rttWindowSize = rttWindowSize;
+  }
+
+  /**
+   * @return true if the request may start, it must then be completed by {@link #release(long, boolean)}
+   */
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= (int) limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases an acquired request.
+   *
+   * @param rttNanos round trip time of the request
+   * @param dropped true if the request failed in a way that signals overload, it then cuts the limit
+   */
+  public void release(long rttNanos, boolean dropped) {
+    int inFlightBefore = inFlight.getAndDecrement();
+    update(rttNanos, dropped, inFlightBefore);
+  }
+
+  /**
+   * Releases an acquired request without using it as a sample, e.g. when it was cancelled.
+   */
+  public void releaseIgnored() {
+    inFlight.decrementAndGet();
+  }
+
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  private synchronized void update(long rttNanos, boolean dropped, int inFlightBefore) {
+    windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+    if (baselineRttNanos == 0 || ++windowSamples >= rttWindowSize) {
+      baselineRttNanos = windowMinRttNanos;
+      windowMinRttNanos = Long.MAX_VALUE;
+      windowSamples = 0;
+    }
+
+    double newLimit = limit;
+    if (dropped || rttNanos > baselineRttNanos * rttTolerance) {
+      newLimit = Math.max(minLimit, limit * backoffRatio);
+    } else if (inFlightBefore * 2 >= limit) {
+      newLimit = Math.min(maxLimit, limit + 1);
+    }
+
+    if ((int) newLimit != (int) limit) {
+      LOG.debug("Concurrency limit changed from {} to {}", (int) limit, (int) newLimit);
+    }
+    limit = newLimit;
+  }
+}
@@ -0,0 +1,103 @@
+package mmajd.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Collects single-key lookups made within a short window, or until the batch is full,
+ * and resolves them with one batched call. Every waiting caller gets the values of its own key.
+ *
+ * @param <V> type of the values, the key of a value is given by the key function
+ */
+public class BatchLoader<V> implements Disposable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchLoader.class);
+
+  // several request threads may enqueue at the same time, retry until the sink is free
+  private static final Sinks.EmitFailureHandler RETRY_NON_SERIALIZED =
+          (signalType, emitResult) -> emitResult == Sinks.EmitResult.FAIL_NON_SERIALIZED;
+
+  private final String name;
+  private final Function<List<Integer>, Flux<V>> batchFunction;
+  private final Function<V, Integer> keyFunction;
+
+  private final Sinks.Many<PendingLoad<V>> pending = Sinks.many().unicast().onBackpressureBuffer();
+  private final Disposable dispatcher;
+
+  public BatchLoader(
+          String name,
+          int maxBatchSize,
+          Duration window,
+          Function<List<Integer>, Flux<V>> batchFunction,
+          Function<V, Integer> keyFunction) {
+
+    LOG.info("Creates a batch loader for {} with max batch size = {}, and window = {}", name, maxBatchSize, window);
+
+    this.name = name;
+    this.batchFunction = batchFunction;
+    this.keyFunction = keyFunction;
+
+    this.dispatcher = pending.asFlux()
+            .bufferTimeout(maxBatchSize, window)
+            .flatMap(this::dispatch)
+            .subscribe();
+  }
+
+  public Flux<V> load(int key) {
+    return Mono.<List<V>>create(sink -> pending.emitNext(new PendingLoad<>(key, sink), RETRY_NON_SERIALIZED))
+            .flatMapIterable(values -> values);
+  }
+
+  @Override
+  public void dispose() {
+    pending.tryEmitComplete();
+    dispatcher.dispose();
+  }
+
+  @Override
+  public boolean isDisposed() {
+    return dispatcher.isDisposed();
+  }
+
+  private Mono<Void> dispatch(List<PendingLoad<V>> loads) {
+    List<Integer> keys = loads.stream().map(load -> load.key).distinct().collect(Collectors.toList());
+
+    LOG.debug("{}: dispatches {} lookups as one batch of {} keys", name, loads.size(), keys.size());
+
+    return Flux.defer(() -> batchFunction.apply(keys))
+            .collectMultimap(keyFunction)
+            .doOnNext(valuesByKey -> loads.forEach(load -> load.complete(valuesByKey)))
+            .doOnError(ex -> loads.forEach(load -> load.sink.error(ex)))
+            .onErrorResume(ex -> Mono.empty())
+            .then();
+  }
+
+  private static class PendingLoad<V> {
+    private final int key;
+    private final MonoSink<List<V>> sink;
+
+    PendingLoad(int key, MonoSink<List<V>> sink) {
+      this.key = key;
+      this.sink = sink;
+    }
+
+    void complete(Map<Integer, Collection<V>> valuesByKey) {
+      Collection<V> values = valuesByKey.get(key);
+      sink.success((values == null) ? Collections.emptyList() : new ArrayList<>(values));
+    }
+  }
+}
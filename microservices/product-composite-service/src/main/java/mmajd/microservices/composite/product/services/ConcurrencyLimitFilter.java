@@ -0,0 +1,100 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Sheds load on the composite API, requests above the adaptive concurrency limit are rejected
+ * right away with 503 and a Retry-After header instead of queueing. Streamed products are not
+ * limited, a stream would hold a slot for its whole life and end as one huge RTT sample.
+ */
+@Component
+public class ConcurrencyLimitFilter implements WebFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+  private static final String LIMITED_PATH = "/product-composite";
+  private static final String STREAM_PATH_SUFFIX = "/stream";
+
+  private final boolean enabled;
+  private final String retryAfterSeconds;
+  private final AdaptiveConcurrencyLimiter limiter;
+  private final Counter rejectedRequests;
+
+  @Autowired
+  public ConcurrencyLimitFilter(
+          MeterRegistry registry,
+          @Value("${app.concurrency-limit.enabled:true}") boolean enabled,
+          @Value("${app.concurrency-limit.initial-limit:20}") int initialLimit,
+          @Value("${app.concurrency-limit.min-limit:5}") int minLimit,
+          @Value("${app.concurrency-limit.max-limit:200}") int maxLimit,
+          @Value("${app.concurrency-limit.backoff-ratio:0.9}") double backoffRatio,
+          @Value("${app.concurrency-limit.rtt-tolerance:2.0}") double rttTolerance,
+          @Value("${app.concurrency-limit.rtt-window-size:500}") int rttWindowSize,
+          @Value("${app.concurrency-limit.retry-after-seconds:1}") int retryAfterSeconds) {
+
+    LOG.info("Creates a concurrency limit filter, enabled = {}, initial limit = {}, min = {}, max = {}",
+            enabled, initialLimit, minLimit, maxLimit);
+
+    this.enabled = enabled;
+    this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+    this.limiter = new AdaptiveConcurrencyLimiter(
+            initialLimit, minLimit, maxLimit, backoffRatio, rttTolerance, rttWindowSize);
+
+    Gauge.builder("composite.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .description("Current adaptive concurrency limit of the composite API")
+            .register(registry);
+    Gauge.builder("composite.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .description("Requests currently processed by the composite API")
+            .register(registry);
+    this.rejectedRequests = Counter.builder("composite.concurrency.rejected")
+            .description("Requests rejected because the concurrency limit was reached")
+            .register(registry);
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    String path = exchange.getRequest().getPath().pathWithinApplication().value();
+    if (!enabled || !path.startsWith(LIMITED_PATH) || path.endsWith(STREAM_PATH_SUFFIX)) {
+      return chain.filter(exchange);
+    }
+
+    if (!limiter.tryAcquire()) {
+      LOG.debug("Rejects request, concurrency limit {} reached", limiter.getLimit());
+      rejectedRequests.increment();
+
+      ServerHttpResponse response = exchange.getResponse();
+      response.setStatusCode(SERVICE_UNAVAILABLE);
+      response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+      return response.setComplete();
+    }
+
+    long start = System.nanoTime();
+    return chain.filter(exchange)
+            .doFinally(signal -> {
+              if (signal == SignalType.CANCEL) {
+                limiter.releaseIgnored();
+                return;
+              }
+              HttpStatus status = exchange.getResponse().getStatusCode();
+              boolean dropped = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+              limiter.release(System.nanoTime() - start, dropped);
+            });
+  }
+}
@@ -0,0 +1,259 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Client for one core service, balancing requests over its instances with power-of-two-choices
+ * on outstanding requests. Instances that fail repeatedly, or are much slower than the fastest
+ * instance, are ejected for a while. The timeout of a call is applied per instance, so a hung
+ * instance counts a failure and a latency sample. URI templates are parsed once per instance and path.
+ */
+public class CoreServiceClient {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoreServiceClient.class);
+
+  private final String name;
+  private final WebClient webClient;
+  private final List<Instance> instances;
+  private final OutlierDetection outlierDetection;
+
+  CoreServiceClient(
+          String name,
+          List<String> baseUrls,
+          WebClient webClient,
+          OutlierDetection outlierDetection,
+          MeterRegistry registry) {
+
+    this.name = name;
+    this.webClient = webClient;
+    this.outlierDetection = outlierDetection;
+    this.instances = baseUrls.stream()
+            .map(baseUrl -> new Instance(baseUrl, Counter.builder("composite.instances.ejected")
+                    .description("Times a core service instance was ejected from load balancing")
+                    .tag("service", name)
+                    .tag("instance", baseUrl)
+                    .register(registry)))
+            .collect(Collectors.toList());
+  }
+
+  public <T> Mono<T> get(
+          Function<WebClient.ResponseSpec, Mono<T>> body, Duration timeout, String pathTemplate, Object... uriVariables) {
+
+    return Mono.defer(() -> {
+      Instance instance = choose();
+      long start = instance.start();
+      return body.apply(webClient.get().uri(instance.uri(pathTemplate, uriVariables)).retrieve())
+              .timeout(timeout)
+              .doOnSuccess(value -> instance.succeeded(start))
+              .doOnError(ex -> instance.failed(start, ex))
+              .doOnCancel(() -> instance.cancelled(start));
+    });
+  }
+
+  /**
+   * @param timeout bounds the wait for each element
+   */
+  public <T> Flux<T> getMany(
+          Function<WebClient.ResponseSpec, Flux<T>> body, Duration timeout, String pathTemplate, Object... uriVariables) {
+
+    return Flux.defer(() -> {
+      Instance instance = choose();
+      long start = instance.start();
+      return body.apply(webClient.get().uri(instance.uri(pathTemplate, uriVariables)).retrieve())
+              .timeout(timeout)
+              .doOnComplete(() -> instance.succeeded(start))
+              .doOnError(ex -> instance.failed(start, ex))
+              .doOnCancel(() -> instance.cancelled(start));
+    });
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private Instance choose() {
+    long now = System.nanoTime();
+    List<Instance> available = new ArrayList<>(instances.size());
+    for (Instance instance : instances) {
+      if (!instance.isEjected(now)) {
+        available.add(instance);
+      }
+    }
+    if (available.isEmpty()) {
+      available = instances;
+    }
+    if (available.size() == 1) {
+      return available.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(available.size());
+    int second = random.nextInt(available.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+
+    Instance a = available.get(first);
+    Instance b = available.get(second);
+    return (a.outstanding.get() <= b.outstanding.get()) ? a : b;
+  }
+
+  private void ejectIfOutlier(Instance instance, long now) {
+    if (instance.isEjected(now) || !canEject(now)) {
+      return;
+    }
+
+    if (instance.consecutiveFailures.get() >= outlierDetection.consecutiveFailures) {
+      eject(instance, now, "consecutive failures");
+      return;
+    }
+
+    if (instance.samples >= outlierDetection.minSamples) {
+      double fastest = instances.stream()
+              .filter(other -> other.samples >= outlierDetection.minSamples && !other.isEjected(now))
+              .mapToDouble(other -> other.latencyEwmaNanos)
+              .min()
+              .orElse(instance.latencyEwmaNanos);
+
+      if (instance.latencyEwmaNanos > fastest * outlierDetection.latencyFactor) {
+        eject(instance, now, "slow responses");
+      }
+    }
+  }
+
+  private boolean canEject(long now) {
+    long ejected = instances.stream().filter(instance -> instance.isEjected(now)).count();
+    return (ejected + 1) * 100 <= instances.size() * (long) outlierDetection.maxEjectionPercent;
+  }
+
+  private void eject(Instance instance, long now, String reason) {
+    int times = instance.ejections.incrementAndGet();
+    long ejectionNanos = outlierDetection.baseEjectionTimeNanos * Math.min(times, 10);
+
+    LOG.warn("Ejects {} instance {} for {} ms, reason: {}", name, instance.baseUrl, ejectionNanos / 1_000_000, reason);
+    instance.ejectedCounter.increment();
+    instance.ejectedUntilNanos = now + ejectionNanos;
+    instance.consecutiveFailures.set(0);
+    instance.samples = 0;
+  }
+
+  static class OutlierDetection {
+    private final int consecutiveFailures;
+    private final double latencyFactor;
+    private final int minSamples;
+    private final long baseEjectionTimeNanos;
+    private final int maxEjectionPercent;
+
+    OutlierDetection(
+            int consecutiveFailures,
+            double latencyFactor,
+            int minSamples,
+            long baseEjectionTimeMs,
+            int maxEjectionPercent) {
+
+      this.consecutiveFailures = consecutiveFailures;
+      this.latencyFactor = latencyFactor;
+      this.minSamples = minSamples;
+      this.baseEjectionTimeNanos = baseEjectionTimeMs * 1_000_000;
+      this.maxEjectionPercent = maxEjectionPercent;
+    }
+  }
+
+  private class Instance {
+    private static final double EWMA_WEIGHT = 0.1;
+
+    private final String baseUrl;
+    private final Counter ejectedCounter;
+    private final Map<String, UriTemplate> templates = new ConcurrentHashMap<>();
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger ejections = new AtomicInteger();
+
+    private volatile long ejectedUntilNanos = 0;
+    private volatile double latencyEwmaNanos = 0;
+    private volatile int samples = 0;
+
+    Instance(String baseUrl, Counter ejectedCounter) {
+      this.baseUrl = baseUrl;
+      this.ejectedCounter = ejectedCounter;
+    }
+
+    URI uri(String pathTemplate, Object... uriVariables) {
+      return templates.computeIfAbsent(pathTemplate, path -> new UriTemplate(baseUrl + path)).expand(uriVariables);
+    }
+
+    boolean isEjected(long now) {
+      return ejectedUntilNanos - now > 0;
+    }
+
+    long start() {
+      outstanding.incrementAndGet();
+      return System.nanoTime();
+    }
+
+    void succeeded(long start) {
+      outstanding.decrementAndGet();
+      consecutiveFailures.set(0);
+      recordLatency(start);
+    }
+
+    void failed(long start, Throwable ex) {
+      outstanding.decrementAndGet();
+      // 4xx answers are valid answers of a healthy instance
+      if (ex instanceof WebClientResponseException && ((WebClientResponseException) ex).getStatusCode().is4xxClientError()) {
+        consecutiveFailures.set(0);
+        recordLatency(start);
+        return;
+      }
+      consecutiveFailures.incrementAndGet();
+      // the instance took at least the timeout to not answer
+      if (ex instanceof TimeoutException) {
+        recordLatency(start);
+        return;
+      }
+      ejectIfOutlier(this, System.nanoTime());
+    }
+
+    /**
+     * Cancelled by a faster hedged call or by the caller, the elapsed time is a lower bound of the
+     * latency and only recorded when it is above the average, as a slow instance's would be.
+     */
+    void cancelled(long start) {
+      outstanding.decrementAndGet();
+      if (samples > 0 && System.nanoTime() - start > latencyEwmaNanos) {
+        recordLatency(start);
+      }
+    }
+
+    private void recordLatency(long start) {
+      long now = System.nanoTime();
+      long latency = now - start;
+      synchronized (this) {
+        latencyEwmaNanos = (samples == 0) ? latency : latencyEwmaNanos + EWMA_WEIGHT * (latency - latencyEwmaNanos);
+        samples++;
+      }
+      ejectIfOutlier(this, now);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates the clients for the core services, each with a dedicated connection pool shared by its instances.
+ * With h2c enabled, requests are multiplexed over cleartext HTTP/2 connections, falling back to HTTP/1.1.
+ * Pool metrics are published as reactor.netty.connection.provider.* tagged with the pool name.
+ */
+@Component
+public class CoreServiceClientFactory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CoreServiceClientFactory.class);
+
+  private final WebClient.Builder webClientBuilder;
+  private final MeterRegistry registry;
+
+  private final int maxConnections;
+  private final int pendingAcquireMaxCount;
+  private final Duration pendingAcquireTimeout;
+  private final Duration maxIdleTime;
+  private final int connectTimeoutMs;
+  private final boolean h2c;
+  private final CoreServiceClient.OutlierDetection outlierDetection;
+
+  private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+  @Autowired
+  public CoreServiceClientFactory(
+          WebClient.Builder webClientBuilder,
+          MeterRegistry registry,
+          @Value("${app.http-client.max-connections:50}") int maxConnections,
+          @Value("${app.http-client.pending-acquire-max-count:500}") int pendingAcquireMaxCount,
+          @Value("${app.http-client.pending-acquire-timeout-ms:2000}") long pendingAcquireTimeoutMs,
+          @Value("${app.http-client.max-idle-time-ms:30000}") long maxIdleTimeMs,
+          @Value("${app.http-client.connect-timeout-ms:1000}") int connectTimeoutMs,
+          @Value("${app.http-client.h2c:true}") boolean h2c,
+          @Value("${app.outlier-detection.consecutive-failures:5}") int consecutiveFailures,
+          @Value("${app.outlier-detection.latency-factor:3.0}") double latencyFactor,
+          @Value("${app.outlier-detection.min-samples:20}") int minSamples,
+          @Value("${app.outlier-detection.base-ejection-time-ms:10000}") long baseEjectionTimeMs,
+          @Value("${app.outlier-detection.max-ejection-percent:50}") int maxEjectionPercent) {
+
+    this.webClientBuilder = webClientBuilder;
+    this.registry = registry;
+    this.maxConnections = maxConnections;
+    this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+    this.pendingAcquireTimeout = Duration.ofMillis(pendingAcquireTimeoutMs);
+    this.maxIdleTime = Duration.ofMillis(maxIdleTimeMs);
+    this.connectTimeoutMs = connectTimeoutMs;
+    this.h2c = h2c;
+    this.outlierDetection = new CoreServiceClient.OutlierDetection(
+            consecutiveFailures, latencyFactor, minSamples, baseEjectionTimeMs, maxEjectionPercent);
+  }
+
+  public CoreServiceClient create(String name, List<String> baseUrls) {
+    LOG.info("Creates a client for {} on {} with max connections = {}, h2c = {}", name, baseUrls, maxConnections, h2c);
+
+    ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(pendingAcquireMaxCount)
+            .pendingAcquireTimeout(pendingAcquireTimeout)
+            .maxIdleTime(maxIdleTime)
+            .metrics(true)
+            .build();
+    connectionProviders.add(connectionProvider);
+
+    HttpClient httpClient = HttpClient.create(connectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+            .protocol(h2c ? new HttpProtocol[] {HttpProtocol.H2C, HttpProtocol.HTTP11} : new HttpProtocol[] {HttpProtocol.HTTP11});
+
+    WebClient webClient = webClientBuilder.clone()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+
+    return new CoreServiceClient(name, baseUrls, webClient, outlierDetection, registry);
+  }
+
+  @PreDestroy
+  void disposeConnectionProviders() {
+    connectionProviders.forEach(ConnectionProvider::dispose);
+  }
+}
@@ -0,0 +1,226 @@
+package mmajd.microservices.composite.product.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write events of the composite are appended to a local {@link OutboxLog} and the request
+ * completes once they are on disk. A relay thread drains the log to the broker in order, through
+ * the {@link EventPublisher}, and acknowledges the offset of each confirmed event. While the broker
+ * is unavailable the relay retries with backoff and writes keep going to the outbox.
+ * Delivery is at least once, events sent but not yet acknowledged are sent again after a restart.
+ * The cached aggregate of a product is invalidated once its event is confirmed, not on append.
+ */
+@Component
+public class EventOutbox {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventOutbox.class);
+
+  private final boolean enabled;
+  private final ObjectMapper mapper;
+  private final EventPublisher eventPublisher;
+  private final ProductAggregateCache aggregateCache;
+  private final int relayBatchSize;
+  private final long retryBackoffMs;
+  private final long maxRetryBackoffMs;
+
+  private final OutboxLog log;
+  private final Thread relay;
+  private final Object appended = new Object();
+  private volatile boolean running = true;
+
+  private final AtomicLong relayedOffset = new AtomicLong();
+
+  @Autowired
+  public EventOutbox(
+          ObjectMapper mapper,
+          EventPublisher eventPublisher,
+          ProductAggregateCache aggregateCache,
+          MeterRegistry registry,
+          @Value("${app.outbox.enabled:false}") boolean enabled,
+          @Value("${app.outbox.directory:${java.io.tmpdir}/product-composite-outbox}") String directory,
+          @Value("${app.outbox.segment-size:67108864}") int segmentSize,
+          @Value("${app.outbox.relay-batch-size:100}") int relayBatchSize,
+          @Value("${app.outbox.retry-backoff-ms:100}") long retryBackoffMs,
+          @Value("${app.outbox.max-retry-backoff-ms:5000}") long maxRetryBackoffMs) {
+
+    this.enabled = enabled;
+    this.mapper = mapper;
+    this.eventPublisher = eventPublisher;
+    this.aggregateCache = aggregateCache;
+    this.relayBatchSize = relayBatchSize;
+    this.retryBackoffMs = retryBackoffMs;
+    this.maxRetryBackoffMs = maxRetryBackoffMs;
+
+    if (!enabled) {
+      this.log = null;
+      this.relay = null;
+      return;
+    }
+
+    LOG.info("Creates an event outbox in {} with segment size = {}", directory, segmentSize);
+
+    this.log = new OutboxLog(Paths.get(directory), segmentSize);
+    this.relayedOffset.set(log.getAckedOffset());
+
+    Gauge.builder("composite.outbox.lag", log, l -> l.getWriteOffset() - l.getAckedOffset())
+            .description("Bytes of outbox records not yet confirmed by the broker")
+            .baseUnit("bytes")
+            .register(registry);
+
+    this.relay = new Thread(this::relayLoop, "outbox-relay");
+    this.relay.setDaemon(true);
+    this.relay.start();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public Mono<Void> append(String bindingName, int partitionKey, Object payload) {
+    return Mono.defer(() -> Mono.fromFuture(log.append(encode(bindingName, partitionKey, payload))))
+            .doOnNext(offset -> {
+              synchronized (appended) {
+                appended.notifyAll();
+              }
+            })
+            .then();
+  }
+
+  @PreDestroy
+  void close() {
+    if (!enabled) {
+      return;
+    }
+    running = false;
+    relay.interrupt();
+    log.close();
+  }
+
+  private void relayLoop() {
+    long backoff = retryBackoffMs;
+
+    while (running) {
+      try {
+        List<OutboxLog.Record> batch = readBatch(relayedOffset.get());
+        if (batch.isEmpty()) {
+          synchronized (appended) {
+            appended.wait(100);
+          }
+          continue;
+        }
+
+        // publishes are subscribed in log order, the publisher sends the events of a key in that
+        // order on one lane, only the confirms are awaited together, each confirmed prefix is acknowledged
+        Flux.fromIterable(batch)
+                .map(this::decode)
+                .flatMapSequential(event -> publish(event).thenReturn(event), batch.size())
+                .doOnNext(event -> {
+                  log.acknowledge(event.record.getNextOffset());
+                  relayedOffset.set(event.record.getNextOffset());
+                  aggregateCache.invalidate(event.partitionKey);
+                })
+                .then()
+                .block(Duration.ofMinutes(1));
+
+        backoff = retryBackoffMs;
+
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return;
+
+      } catch (RuntimeException ex) {
+        LOG.warn("Failed to relay outbox events, retries in {} ms: {}", backoff, ex.toString());
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        backoff = Math.min(backoff * 2, maxRetryBackoffMs);
+      }
+    }
+  }
+
+  private List<OutboxLog.Record> readBatch(long offset) {
+    List<OutboxLog.Record> batch = new ArrayList<>(relayBatchSize);
+    OutboxLog.Record record;
+    while (batch.size() < relayBatchSize && (record = log.read(offset)) != null) {
+      batch.add(record);
+      offset = record.getNextOffset();
+    }
+    return batch;
+  }
+
+  private Mono<Void> publish(OutboxEvent event) {
+    // stored as JSON, consumers negotiate on the content type header whatever the binding uses
+    return eventPublisher.publish(event.bindingName, event.partitionKey, event.payload, MimeTypeUtils.APPLICATION_JSON);
+  }
+
+  private OutboxEvent decode(OutboxLog.Record record) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.getData()))) {
+      String bindingName = in.readUTF();
+      int partitionKey = in.readInt();
+      byte[] payload = new byte[in.readInt()];
+      in.readFully(payload);
+      return new OutboxEvent(record, bindingName, partitionKey, payload);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Corrupt outbox record at offset " + record.getOffset(), ex);
+    }
+  }
+
+  private byte[] encode(String bindingName, int partitionKey, Object payload) {
+    try {
+      byte[] json = mapper.writeValueAsBytes(payload);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length + 64);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeUTF(bindingName);
+      out.writeInt(partitionKey);
+      out.writeInt(json.length);
+      out.write(json);
+      out.flush();
+      return bytes.toByteArray();
+    } catch (JsonProcessingException ex) {
+      throw new IllegalArgumentException("Failed to serialize event for " + bindingName, ex);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static class OutboxEvent {
+    private final OutboxLog.Record record;
+    private final String bindingName;
+    private final int partitionKey;
+    private final byte[] payload;
+
+    OutboxEvent(OutboxLog.Record record, String bindingName, int partitionKey, byte[] payload) {
+      this.record = record;
+      this.bindingName = bindingName;
+      this.partitionKey = partitionKey;
+      this.payload = payload;
+    }
+  }
+}
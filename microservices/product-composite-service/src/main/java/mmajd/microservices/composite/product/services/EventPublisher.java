@@ -0,0 +1,290 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import mmajd.api.exceptions.ServiceUnavailableException;
+import mmajd.util.reactor.VirtualThreadScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes events and completes once the broker has confirmed them: a Rabbit publisher confirm,
+ * or a Kafka send result, depending on the confirm mode. The send may block, on a Kafka metadata
+ * wait or a Rabbit channel, so it runs on one of send-threads lanes and never on the event loop.
+ * The events of a binding and partition key always go to the same lane, a single thread, so they
+ * are sent in the order they were published, while their confirms are awaited together.
+ * With virtual-threads, each lane runs on a virtual thread instead of a platform thread.
+ * At most max-in-flight events wait for their confirm, further callers wait for a permit in
+ * order and once max-pending callers are waiting, new ones are rejected with 503.
+ */
+@Component
+public class EventPublisher {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventPublisher.class);
+
+  static final String CORRELATION_ID_HEADER = "eventCorrelationId";
+
+  enum ConfirmMode {
+    NONE,
+    RABBIT,
+    KAFKA
+  }
+
+  private final StreamBridge streamBridge;
+  private final ConfirmMode confirmMode;
+  private final Duration confirmTimeout;
+  private final int maxInFlight;
+  private final int maxPending;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger pending = new AtomicInteger();
+  // permits are handed out in the order they were asked for, under this lock
+  private final Object permits = new Object();
+  private final Queue<Waiter> waiters = new ArrayDeque<>();
+
+  // Kafka send results, by correlation id
+  private final Map<String, Sinks.Empty<Void>> pendingAcks = new ConcurrentHashMap<>();
+
+  private final Scheduler[] sendLanes;
+
+  private final MeterRegistry registry;
+
+  @Autowired
+  public EventPublisher(
+          StreamBridge streamBridge,
+          MeterRegistry registry,
+          @Qualifier("eventSendResults") SubscribableChannel sendResults,
+          @Value("${app.event-publisher.confirm-mode:none}") String confirmMode,
+          @Value("${app.event-publisher.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+          @Value("${app.event-publisher.max-in-flight:256}") int maxInFlight,
+          @Value("${app.event-publisher.max-pending:1024}") int maxPending,
+          @Value("${app.event-publisher.send-threads:10}") int sendThreads,
+          @Value("${app.event-publisher.virtual-threads:false}") boolean virtualThreads) {
+
+    LOG.info("Creates an event publisher with confirm mode = {}, max in flight = {}, max pending = {}, and {} send lanes on {} threads",
+            confirmMode, maxInFlight, maxPending, sendThreads, virtualThreads ? "virtual" : "platform");
+    if (virtualThreads) {
+      VirtualThreadScheduler.checkSupported("app.event-publisher.virtual-threads", sendThreads);
+    }
+
+    this.streamBridge = streamBridge;
+    this.registry = registry;
+    this.confirmMode = ConfirmMode.valueOf(confirmMode.toUpperCase());
+    this.confirmTimeout = Duration.ofMillis(confirmTimeoutMs);
+    this.maxInFlight = maxInFlight;
+    this.maxPending = maxPending;
+    // no more sends than permits are ever queued on the lanes
+    this.sendLanes = new Scheduler[sendThreads];
+    for (int i = 0; i < sendThreads; i++) {
+      sendLanes[i] = virtualThreads
+              ? VirtualThreadScheduler.createSingle("event-publisher-" + i)
+              : Schedulers.newSingle("event-publisher-" + i);
+    }
+
+    sendResults.subscribe(this::onSendResult);
+
+    Gauge.builder("composite.events.inflight", inFlight, AtomicInteger::get)
+            .description("Published events waiting for the broker confirm")
+            .register(registry);
+    Gauge.builder("composite.events.pending", pending, AtomicInteger::get)
+            .description("Events waiting for a publish permit")
+            .register(registry);
+  }
+
+  public Mono<Void> publish(String bindingName, Object partitionKey, Object payload) {
+    return publish(bindingName, partitionKey, payload, null);
+  }
+
+  /**
+   * @param contentType content type of an already serialized payload, null to use the one of the binding
+   */
+  public Mono<Void> publish(String bindingName, Object partitionKey, Object payload, MimeType contentType) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return acquire()
+              .then(Mono.defer(() -> send(bindingName, partitionKey, payload, contentType)).doFinally(signal -> release()))
+              .doOnSuccess(v -> record(bindingName, "confirmed", start))
+              .doOnError(ex -> record(bindingName,
+                      (ex instanceof ServiceUnavailableException) ? "rejected" : "failed", start));
+    });
+  }
+
+  private Mono<Void> send(String bindingName, Object partitionKey, Object payload, MimeType contentType) {
+    String correlationId = UUID.randomUUID().toString();
+    MessageBuilder<Object> builder = MessageBuilder.withPayload(payload)
+            .setHeader("partitionKey", partitionKey)
+            .setHeader(CORRELATION_ID_HEADER, correlationId);
+    if (contentType != null) {
+      builder.setHeader(MessageHeaders.CONTENT_TYPE, contentType);
+    }
+
+    // the confirm is registered before sending, it may arrive before send returns
+    Mono<Void> confirmed;
+    switch (confirmMode) {
+      case RABBIT: {
+        CorrelationData correlationData = new CorrelationData(correlationId);
+        builder.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlationData);
+        confirmed = Mono.fromFuture(correlationData.getFuture().completable())
+                .flatMap(confirm -> confirm.isAck()
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ServiceUnavailableException("Event was not accepted by the broker: " + confirm.getReason())));
+      } break;
+
+      case KAFKA: {
+        Sinks.Empty<Void> ack = Sinks.empty();
+        pendingAcks.put(correlationId, ack);
+        confirmed = ack.asMono().doFinally(signal -> pendingAcks.remove(correlationId));
+      } break;
+
+      default:
+        confirmed = Mono.empty();
+    }
+
+    Message<Object> message = builder.build();
+    LOG.debug("Publishes message: {}, on binding: {}", message.getPayload(), bindingName);
+
+    // queued on the lane when subscribed, so in the order the permits were handed out
+    return Mono.fromCallable(() -> streamBridge.send(bindingName, message))
+            .subscribeOn(laneOf(bindingName, partitionKey))
+            .flatMap(sent -> {
+              if (!sent) {
+                pendingAcks.remove(correlationId);
+                return Mono.error(new ServiceUnavailableException("Failed to send event to " + bindingName));
+              }
+              return confirmed
+                      .timeout(confirmTimeout)
+                      .onErrorMap(TimeoutException.class, ex -> new ServiceUnavailableException(
+                              "Event to " + bindingName + " was not confirmed within " + confirmTimeout));
+            });
+  }
+
+  private Scheduler laneOf(String bindingName, Object partitionKey) {
+    return sendLanes[Math.floorMod(Objects.hash(bindingName, partitionKey), sendLanes.length)];
+  }
+
+  @PreDestroy
+  void disposeSendLanes() {
+    for (Scheduler lane : sendLanes) {
+      lane.dispose();
+    }
+  }
+
+  private void onSendResult(Message<?> result) {
+    Object correlationId = result.getHeaders().get(CORRELATION_ID_HEADER);
+    Sinks.Empty<Void> ack = (correlationId == null) ? null : pendingAcks.remove(correlationId.toString());
+    if (ack != null) {
+      ack.tryEmitEmpty();
+    }
+  }
+
+  private Mono<Void> acquire() {
+    return Mono.create(sink -> {
+      synchronized (permits) {
+        // not ahead of the callers already waiting
+        if (waiters.isEmpty() && tryAcquire()) {
+          sink.success();
+          return;
+        }
+
+        if (pending.incrementAndGet() > maxPending) {
+          pending.decrementAndGet();
+          sink.error(new ServiceUnavailableException("Too many events waiting to be published, try again later"));
+          return;
+        }
+
+        Waiter waiter = new Waiter(sink);
+        waiters.add(waiter);
+        sink.onCancel(() -> {
+          synchronized (permits) {
+            if (waiter.done.compareAndSet(false, true)) {
+              waiters.remove(waiter);
+              pending.decrementAndGet();
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= maxInFlight) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private void release() {
+    inFlight.decrementAndGet();
+    drain();
+  }
+
+  private void drain() {
+    synchronized (permits) {
+      while (!waiters.isEmpty() && tryAcquire()) {
+        Waiter waiter = waiters.poll();
+        if (!waiter.done.compareAndSet(false, true)) {
+          // caller cancelled, hand the permit back
+          inFlight.decrementAndGet();
+          continue;
+        }
+        pending.decrementAndGet();
+        // the send is queued on its lane before the next waiter is resumed, the send itself hops to the lane
+        waiter.sink.success();
+      }
+    }
+  }
+
+  private void record(String bindingName, String outcome, long start) {
+    Timer.builder("composite.events.publish")
+            .description("Time from publish request to broker confirm")
+            .tag("binding", bindingName)
+            .tag("outcome", outcome)
+            .register(registry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private static class Waiter {
+    private final MonoSink<Void> sink;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+
+    Waiter(MonoSink<Void> sink) {
+      this.sink = sink;
+    }
+  }
+}
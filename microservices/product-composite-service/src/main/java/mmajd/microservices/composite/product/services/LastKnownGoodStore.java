@@ -0,0 +1,89 @@
+package mmajd.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded store of the last successful answer of a core service per productId,
+ * served while the circuit to that service is open.
+ *
+ * @param <V> type of the values, the productId of a value is given by the key function
+ */
+class LastKnownGoodStore<V> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LastKnownGoodStore.class);
+
+  private final String service;
+  private final Function<V, Integer> keyFunction;
+  private final Cache<Integer, List<V>> store;
+  private final Counter fallbackServed;
+
+  // productIds served from the store, refreshed once the circuit half-opens
+  private final Set<Integer> staleServed = ConcurrentHashMap.newKeySet();
+
+  LastKnownGoodStore(String service, long maxSize, Function<V, Integer> keyFunction, MeterRegistry registry) {
+    this.service = service;
+    this.keyFunction = keyFunction;
+    this.store = Caffeine.newBuilder().maximumSize(maxSize).build();
+    this.fallbackServed = Counter.builder("composite.fallback.served")
+            .description("Lookups answered from the last known good store while a circuit is open")
+            .tag("service", service)
+            .register(registry);
+  }
+
+  /**
+   * Keeps the values of a successful lookup, ids without any values are stored as empty.
+   */
+  void put(Collection<Integer> productIds, List<V> values) {
+    Map<Integer, List<V>> valuesByProductId = values.stream().collect(Collectors.groupingBy(keyFunction));
+    productIds.forEach(productId ->
+            store.put(productId, valuesByProductId.getOrDefault(productId, new ArrayList<>())));
+  }
+
+  Optional<List<V>> get(int productId) {
+    List<V> values = store.getIfPresent(productId);
+    if (values == null) {
+      return Optional.empty();
+    }
+
+    LOG.debug("Serves last known good {} for productId: {}", service, productId);
+    fallbackServed.increment();
+    staleServed.add(productId);
+    return Optional.of(values);
+  }
+
+  Map<Integer, List<V>> get(Collection<Integer> productIds) {
+    Map<Integer, List<V>> valuesByProductId = new HashMap<>();
+    productIds.forEach(productId -> get(productId).ifPresent(values -> valuesByProductId.put(productId, values)));
+    return valuesByProductId;
+  }
+
+  /**
+   * Removes and returns up to maxCount of the productIds that were served stale.
+   */
+  List<Integer> drainStaleServed(int maxCount) {
+    List<Integer> productIds = new ArrayList<>();
+    Iterator<Integer> it = staleServed.iterator();
+    while (it.hasNext() && productIds.size() < maxCount) {
+      productIds.add(it.next());
+      it.remove();
+    }
+    return productIds;
+  }
+}
@@ -0,0 +1,58 @@
+package mmajd.microservices.composite.product.services;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent successful calls to one core service,
+ * used to decide when a hedged request is worth sending. The percentile is recomputed
+ * every few records, outside the lock, and read without locking on each request.
+ */
+class LatencyTracker {
+
+  private static final int MIN_SAMPLES = 20;
+
+  private final double percentile;
+  private final int recomputeEvery;
+
+  private final long[] samples;
+  private int next = 0;
+  private int count = 0;
+  private int sinceRecompute = 0;
+
+  private volatile Duration current;
+
+  LatencyTracker(int size, double percentile) {
+    this.samples = new long[size];
+    this.percentile = percentile;
+    this.recomputeEvery = Math.max(1, size / 20);
+  }
+
+  void record(long latencyMillis) {
+    long[] snapshot = null;
+
+    synchronized (this) {
+      samples[next] = latencyMillis;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+
+      if (count >= MIN_SAMPLES && (current == null || ++sinceRecompute >= recomputeEvery)) {
+        sinceRecompute = 0;
+        snapshot = Arrays.copyOf(samples, count);
+      }
+    }
+
+    if (snapshot != null) {
+      Arrays.sort(snapshot);
+      int index = Math.max(0, (int) Math.ceil(percentile * snapshot.length) - 1);
+      current = Duration.ofMillis(snapshot[index]);
+    }
+  }
+
+  /**
+   * @return the latency percentile as of the last recompute, or null until enough calls are recorded
+   */
+  Duration percentile() {
+    return current;
+  }
+}
@@ -0,0 +1,411 @@
+package mmajd.microservices.composite.product.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of memory-mapped segment files. Appends are queued and written by one writer
+ * thread, that flushes all records queued since the previous flush with a single force, the
+ * append completes once its record is on disk. The force runs outside the lock, readers only
+ * see records up to the durable offset, the end of the last forced batch. A batch that fails
+ * to be written or forced is rolled back, its records are overwritten by the next one. Offsets are global, a segment starting at offset
+ * N is stored as segment-N.log. The offset up to which records are acknowledged is kept in
+ * the file acked.offset, segments below it are deleted.
+ *
+ * Record layout: length (int, of the data), crc32 of the data (int), data.
+ * A length of 0 marks the end of the written records, -1 that the rest of the segment is unused.
+ */
+public class OutboxLog implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OutboxLog.class);
+
+  private static final int HEADER_SIZE = 8;
+  private static final int END_OF_SEGMENT = -1;
+  private static final String ACKED_OFFSET_FILE = "acked.offset";
+
+  private final Path directory;
+  private final int segmentSize;
+
+  // mapped segments by base offset, only touched by the writer thread and synchronized readers
+  private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+
+  private final BlockingQueue<PendingAppend> appends = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private volatile boolean closed = false;
+
+  private volatile long writeOffset;
+  private volatile long durableOffset;
+  private volatile long ackedOffset;
+  private final FileChannel ackedOffsetChannel;
+
+  public OutboxLog(Path directory, int segmentSize) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+
+    try {
+      Files.createDirectories(directory);
+      this.ackedOffsetChannel = FileChannel.open(directory.resolve(ACKED_OFFSET_FILE),
+              StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      this.ackedOffset = readAckedOffset();
+      recover();
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to open outbox in " + directory, ex);
+    }
+
+    LOG.info("Opened outbox in {}, write offset = {}, acked offset = {}", directory, writeOffset, ackedOffset);
+
+    this.writer = new Thread(this::writeLoop, "outbox-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * @return the offset after the record, completed once the record is on disk
+   */
+  public CompletableFuture<Long> append(byte[] data) {
+    if (data.length + HEADER_SIZE * 2 > segmentSize) {
+      CompletableFuture<Long> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new IllegalArgumentException("Record of " + data.length + " bytes does not fit in a segment"));
+      return failed;
+    }
+
+    PendingAppend append = new PendingAppend(data);
+    if (closed) {
+      append.result.completeExceptionally(new IllegalStateException("Outbox is closed"));
+    } else {
+      appends.add(append);
+    }
+    return append.result;
+  }
+
+  /**
+   * @return the first record at or after the offset, or null if none is written yet
+   */
+  public synchronized Record read(long offset) {
+    while (offset < durableOffset) {
+      long base = baseOf(offset);
+      MappedByteBuffer segment = segments.get(base);
+      if (segment == null) {
+        return null;
+      }
+
+      ByteBuffer buffer = segment.duplicate();
+      buffer.position((int) (offset - base));
+      int length = buffer.getInt();
+      if (length == END_OF_SEGMENT) {
+        offset = base + segmentSize;
+        continue;
+      }
+
+      buffer.getInt();
+      byte[] data = new byte[length];
+      buffer.get(data);
+      return new Record(offset, offset + HEADER_SIZE + length, data);
+    }
+    return null;
+  }
+
+  /**
+   * Marks all records before the offset as delivered.
+   */
+  public synchronized void acknowledge(long offset) {
+    if (offset <= ackedOffset) {
+      return;
+    }
+
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, offset);
+      ackedOffsetChannel.write(buffer, 0);
+      ackedOffsetChannel.force(false);
+    } catch (IOException ex) {
+      throw new UncheckedIOException("Failed to store acked outbox offset", ex);
+    }
+    ackedOffset = offset;
+
+    // segments entirely below the acked offset are no longer needed
+    while (!segments.isEmpty() && segments.firstKey() + segmentSize <= offset && segments.firstKey() != baseOf(writeOffset)) {
+      long base = segments.pollFirstEntry().getKey();
+      deleteSegment(base);
+    }
+  }
+
+  public long getAckedOffset() {
+    return ackedOffset;
+  }
+
+  public long getWriteOffset() {
+    return writeOffset;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    writer.interrupt();
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+      ackedOffsetChannel.close();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (IOException ex) {
+      LOG.warn("Failed to close outbox offset file: {}", ex.toString());
+    }
+
+    PendingAppend append;
+    while ((append = appends.poll()) != null) {
+      append.result.completeExceptionally(new IllegalStateException("Outbox is closed"));
+    }
+  }
+
+  private void writeLoop() {
+    List<PendingAppend> batch = new ArrayList<>();
+    while (!closed) {
+      try {
+        batch.add(appends.take());
+      } catch (InterruptedException ex) {
+        break;
+      }
+      appends.drainTo(batch);
+
+      long start = writeOffset;
+      try {
+        List<MappedByteBuffer> dirty = new ArrayList<>(2);
+        List<Long> offsets = write(batch, dirty);
+
+        // group commit, one force per touched segment for the whole batch, readers and acks go on meanwhile
+        dirty.forEach(this::force);
+        durableOffset = offsets.get(offsets.size() - 1);
+
+        for (int i = 0; i < batch.size(); i++) {
+          batch.get(i).result.complete(offsets.get(i));
+        }
+      } catch (RuntimeException ex) {
+        LOG.error("Failed to write {} records to the outbox", batch.size(), ex);
+        batch.forEach(append -> append.result.completeExceptionally(ex));
+        rollback(start);
+      }
+      batch.clear();
+    }
+
+    PendingAppend append;
+    while ((append = appends.poll()) != null) {
+      append.result.completeExceptionally(new IllegalStateException("Outbox is closed"));
+    }
+  }
+
+  /**
+   * Writes the records of a segment to disk, overridden by tests to fail it.
+   */
+  protected void force(MappedByteBuffer segment) {
+    segment.force();
+  }
+
+  // the failed records must neither be relayed nor recovered, the next batch overwrites them
+  private void rollback(long start) {
+    MappedByteBuffer segment;
+    synchronized (this) {
+      writeOffset = start;
+      segment = segment(baseOf(start));
+      segment.putInt((int) (start - baseOf(start)), 0);
+    }
+
+    try {
+      force(segment);
+    } catch (RuntimeException ex) {
+      // the failed records may still be found on disk after a restart, accept no more appends
+      LOG.error("Failed to roll back the outbox to offset {}, closing it", start, ex);
+      closed = true;
+    }
+  }
+
+  private synchronized List<Long> write(List<PendingAppend> batch, List<MappedByteBuffer> dirty) {
+    List<Long> offsets = new ArrayList<>(batch.size());
+
+    for (PendingAppend append : batch) {
+      int recordSize = HEADER_SIZE + append.data.length;
+      long base = baseOf(writeOffset);
+      int position = (int) (writeOffset - base);
+
+      // always leave room for the end marker that follows the record
+      if (position + recordSize + Integer.BYTES > segmentSize) {
+        MappedByteBuffer full = segment(base);
+        full.putInt(position, END_OF_SEGMENT);
+        addOnce(dirty, full);
+        base += segmentSize;
+        position = 0;
+      }
+
+      MappedByteBuffer segment = segment(base);
+      CRC32 crc = new CRC32();
+      crc.update(append.data);
+
+      ByteBuffer buffer = segment.duplicate();
+      buffer.position(position + Integer.BYTES);
+      buffer.putInt((int) crc.getValue());
+      buffer.put(append.data);
+      buffer.putInt(0);
+      // the length is written last, a reader never sees a partly written record
+      segment.putInt(position, append.data.length);
+      addOnce(dirty, segment);
+
+      writeOffset = base + position + recordSize;
+      offsets.add(writeOffset);
+    }
+    return offsets;
+  }
+
+  private void recover() throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long base = Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+        if (base + segmentSize <= ackedOffset) {
+          Files.delete(file);
+        } else {
+          segments.put(base, map(file));
+        }
+      }
+    }
+
+    long offset = segments.isEmpty() ? ackedOffset : segments.firstKey();
+    if (segments.isEmpty()) {
+      segment(baseOf(offset));
+    }
+
+    // scans for the first record that is missing or does not match its crc
+    while (true) {
+      long base = baseOf(offset);
+      MappedByteBuffer segment = segments.get(base);
+      if (segment == null) {
+        break;
+      }
+      int position = (int) (offset - base);
+      int length = segment.getInt(position);
+      if (length == END_OF_SEGMENT) {
+        offset = base + segmentSize;
+        continue;
+      }
+      if (length <= 0 || position + HEADER_SIZE + length > segmentSize || !crcMatches(segment, position, length)) {
+        break;
+      }
+      offset += HEADER_SIZE + length;
+    }
+
+    writeOffset = offset;
+    durableOffset = offset;
+    segment(baseOf(writeOffset)).putInt((int) (writeOffset - baseOf(writeOffset)), 0);
+  }
+
+  private boolean crcMatches(MappedByteBuffer segment, int position, int length) {
+    ByteBuffer buffer = segment.duplicate();
+    buffer.position(position + HEADER_SIZE);
+    buffer.limit(position + HEADER_SIZE + length);
+    CRC32 crc = new CRC32();
+    crc.update(buffer);
+    return (int) crc.getValue() == segment.getInt(position + Integer.BYTES);
+  }
+
+  private long readAckedOffset() throws IOException {
+    if (ackedOffsetChannel.size() < Long.BYTES) {
+      return 0;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    ackedOffsetChannel.read(buffer, 0);
+    return buffer.getLong(0);
+  }
+
+  private MappedByteBuffer segment(long base) {
+    return segments.computeIfAbsent(base, b -> {
+      try {
+        return map(segmentFile(b));
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Failed to create outbox segment " + b, ex);
+      }
+    });
+  }
+
+  private MappedByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+  }
+
+  private void deleteSegment(long base) {
+    try {
+      Files.deleteIfExists(segmentFile(base));
+      LOG.debug("Deleted acknowledged outbox segment {}", base);
+    } catch (IOException ex) {
+      LOG.warn("Failed to delete outbox segment {}: {}", base, ex.toString());
+    }
+  }
+
+  private Path segmentFile(long base) {
+    return directory.resolve(String.format("segment-%020d.log", base));
+  }
+
+  private long baseOf(long offset) {
+    return offset - (offset % segmentSize);
+  }
+
+  // by identity, equals of a buffer compares its content
+  private static void addOnce(List<MappedByteBuffer> buffers, MappedByteBuffer buffer) {
+    for (MappedByteBuffer added : buffers) {
+      if (added == buffer) {
+        return;
+      }
+    }
+    buffers.add(buffer);
+  }
+
+  public static class Record {
+    private final long offset;
+    private final long nextOffset;
+    private final byte[] data;
+
+    Record(long offset, long nextOffset, byte[] data) {
+      this.offset = offset;
+      this.nextOffset = nextOffset;
+      this.data = data;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getNextOffset() {
+      return nextOffset;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  private static class PendingAppend {
+    private final byte[] data;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    PendingAppend(byte[] data) {
+      this.data = data;
+    }
+  }
+}
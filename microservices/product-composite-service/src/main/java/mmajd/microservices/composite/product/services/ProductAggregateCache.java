@@ -0,0 +1,103 @@
+package mmajd.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import mmajd.api.composite.product.ProductAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Read-through cache of assembled product aggregates, bounded by size and ttl.
+ * Entries are invalidated whenever a write event for the product is published,
+ * the ttl bounds staleness for writes made through other composite instances.
+ * The core services apply a write after it is published, so aggregates loaded within
+ * write-settle-ms of a write to the product are served but not cached.
+ */
+@Component
+public class ProductAggregateCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+  private static final String CACHE_NAME = "productAggregates";
+
+  private final Cache<Integer, ProductAggregate> cache;
+
+  // nano time of the last write per product, a load that raced with a write of its product is not kept,
+  // kept as long as an aggregate loaded before the write could be cached
+  private final Cache<Integer, Long> lastWrites;
+  private final long writeSettleNanos;
+
+  @Autowired
+  public ProductAggregateCache(
+          MeterRegistry registry,
+          @Value("${app.aggregate-cache.max-size:10000}") long maxSize,
+          @Value("${app.aggregate-cache.ttl-seconds:30}") long ttlSeconds,
+          @Value("${app.aggregate-cache.write-settle-ms:2000}") long writeSettleMs) {
+
+    LOG.info("Creates a product aggregate cache with max size = {}, ttl = {}s, and write settle time = {}ms",
+            maxSize, ttlSeconds, writeSettleMs);
+
+    this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    this.writeSettleNanos = TimeUnit.MILLISECONDS.toNanos(writeSettleMs);
+    this.lastWrites = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Math.max(TimeUnit.SECONDS.toNanos(ttlSeconds), writeSettleNanos), TimeUnit.NANOSECONDS)
+            .build();
+
+    CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+  }
+
+  public Mono<ProductAggregate> get(int productId, Function<Integer, Mono<ProductAggregate>> loader) {
+    return Mono.defer(() -> {
+      ProductAggregate cached = cache.getIfPresent(productId);
+      if (cached != null) {
+        LOG.debug("Product aggregate cache hit for productId: {}", productId);
+        return Mono.just(cached);
+      }
+
+      long loadStart = System.nanoTime();
+      Long lastWrite = lastWrites.getIfPresent(productId);
+      return loader.apply(productId).doOnNext(aggregate -> put(productId, aggregate, loadStart, lastWrite));
+    });
+  }
+
+  public void invalidate(int productId) {
+    LOG.debug("Invalidates cached product aggregate for productId: {}", productId);
+    lastWrites.put(productId, System.nanoTime());
+    cache.invalidate(productId);
+  }
+
+  private void put(int productId, ProductAggregate aggregate, long loadStart, Long lastWrite) {
+    // a degraded aggregate is served once, the next request retries the missing sections
+    if (aggregate.isRecommendationsDegraded() || aggregate.isReviewsDegraded()) {
+      return;
+    }
+
+    // the core services may not have applied the write yet, the aggregate may hold the old data
+    if (lastWrite != null && loadStart - lastWrite < writeSettleNanos) {
+      LOG.debug("Product aggregate for productId: {} loaded shortly after a write, not cached", productId);
+      return;
+    }
+
+    cache.put(productId, aggregate);
+
+    if (!Objects.equals(lastWrite, lastWrites.getIfPresent(productId))) {
+      cache.invalidate(productId);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import mmajd.api.composite.product.ProductAggregate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Single-flight for product aggregate lookups, concurrent callers asking for the same
+ * productId share one in-flight fan-out instead of starting their own.
+ */
+@Component
+public class ProductAggregateCoalescer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCoalescer.class);
+
+  private final Map<Integer, Mono<ProductAggregate>> inFlight = new ConcurrentHashMap<>();
+
+  private final Counter coalescedRequests;
+
+  @Autowired
+  public ProductAggregateCoalescer(MeterRegistry registry) {
+    this.coalescedRequests = Counter.builder("composite.requests.coalesced")
+            .description("getProduct requests served by an already in-flight lookup")
+            .register(registry);
+
+    registry.gaugeMapSize("composite.requests.inflight", Tags.empty(), inFlight);
+  }
+
+  public Mono<ProductAggregate> coalesce(int productId, Function<Integer, Mono<ProductAggregate>> loader) {
+    return Mono.defer(() -> {
+      AtomicBoolean leader = new AtomicBoolean(false);
+
+      Mono<ProductAggregate> shared = inFlight.computeIfAbsent(productId, id -> {
+        leader.set(true);
+        return Mono.defer(() -> loader.apply(id))
+                .doFinally(signal -> inFlight.remove(id))
+                .cache();
+      });
+
+      if (!leader.get()) {
+        LOG.debug("Joins in-flight lookup for productId: {}", productId);
+        coalescedRequests.increment();
+      }
+
+      return shared;
+    });
+  }
+}
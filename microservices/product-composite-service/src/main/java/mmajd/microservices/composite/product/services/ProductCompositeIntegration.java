@@ -1,6 +1,10 @@
 package mmajd.microservices.composite.product.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
 import mmajd.api.core.product.Product;
 import mmajd.api.core.product.ProductService;
 import mmajd.api.core.recommendation.Recommendation;
@@ -14,162 +18,405 @@ import mmajd.util.http.HttpErrorInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
+import reactor.util.function.Tuple2;
 
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static java.util.logging.Level.FINE;
 import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.CREATE_BATCH;
 import static mmajd.api.event.Event.Type.DELETE;
 import static org.springframework.http.HttpMethod.GET;
-import static reactor.core.publisher.Flux.empty;
 
 @Component
 public class ProductCompositeIntegration implements ProductService, RecommendationService, ReviewService {
 
   private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeIntegration.class);
 
-  private final WebClient webClient;
   private final ObjectMapper mapper;
 
-  private final String productServiceUrl;
-  private final String recommendationServiceUrl;
-  private final String reviewServiceUrl;
+  private final CoreServiceClient productClient;
+  private final CoreServiceClient recommendationClient;
+  private final CoreServiceClient reviewClient;
 
-  private final Scheduler publishEventScheduler;
+  private final EventPublisher eventPublisher;
+  private final EventOutbox eventOutbox;
 
-  private final StreamBridge streamBridge;
+  private final ProductAggregateCache aggregateCache;
+
+  private final boolean batchingEnabled;
+  private final BatchLoader<Product> productLoader;
+  private final BatchLoader<Recommendation> recommendationLoader;
+  private final BatchLoader<Review> reviewLoader;
+
+  private final Duration productServiceTimeout;
+  private final Duration recommendationServiceTimeout;
+  private final Duration reviewServiceTimeout;
+
+  private final boolean hedgingEnabled;
+  private final Duration hedgingMinDelay;
+  private final LatencyTracker productLatencies;
+  private final LatencyTracker recommendationLatencies;
+  private final LatencyTracker reviewLatencies;
+
+  private final CircuitBreaker productCircuitBreaker;
+  private final CircuitBreaker recommendationCircuitBreaker;
+  private final CircuitBreaker reviewCircuitBreaker;
+  private final LastKnownGoodStore<Recommendation> lastKnownRecommendations;
+  private final LastKnownGoodStore<Review> lastKnownReviews;
+  private final int revalidateMaxSize;
 
   @Autowired
   public ProductCompositeIntegration(
-          @Qualifier("publicEventScheduler") Scheduler eventScheduler,
-          StreamBridge streamBridge,
-          WebClient.Builder webClient,
+          EventPublisher eventPublisher,
+          EventOutbox eventOutbox,
+          ProductAggregateCache aggregateCache,
+          CoreServiceClientFactory clientFactory,
           ObjectMapper mapper,
-          @Value("${app.product-service.host}") String productServiceHost,
-          @Value("${app.product-service.port}") int productServicePort,
-          @Value("${app.recommendation-service.host}") String recommendationServiceHost,
-          @Value("${app.recommendation-service.port}") int recommendationServicePort,
-          @Value("${app.review-service.host}") String reviewServiceHost,
-          @Value("${app.review-service.port}") int reviewServicePort) {
-
-    this.publishEventScheduler = eventScheduler;
-    this.streamBridge = streamBridge;
-    this.webClient = webClient.build();
+          CircuitBreakerRegistry circuitBreakerRegistry,
+          MeterRegistry meterRegistry,
+          @Value("${app.product-service.instances:${app.product-service.host}:${app.product-service.port}}")
+                  List<String> productServiceInstances,
+          @Value("${app.recommendation-service.instances:${app.recommendation-service.host}:${app.recommendation-service.port}}")
+                  List<String> recommendationServiceInstances,
+          @Value("${app.review-service.instances:${app.review-service.host}:${app.review-service.port}}")
+                  List<String> reviewServiceInstances,
+          @Value("${app.batching.enabled:false}") boolean batchingEnabled,
+          @Value("${app.batching.max-size:50}") int batchMaxSize,
+          @Value("${app.batching.window-ms:2}") long batchWindowMs,
+          @Value("${app.product-service.timeout-ms:2000}") long productServiceTimeoutMs,
+          @Value("${app.recommendation-service.timeout-ms:1000}") long recommendationServiceTimeoutMs,
+          @Value("${app.review-service.timeout-ms:1000}") long reviewServiceTimeoutMs,
+          @Value("${app.hedging.enabled:false}") boolean hedgingEnabled,
+          @Value("${app.hedging.percentile:0.95}") double hedgingPercentile,
+          @Value("${app.hedging.min-delay-ms:10}") long hedgingMinDelayMs,
+          @Value("${app.hedging.window-size:1000}") int hedgingWindowSize,
+          @Value("${app.last-known-good.max-size:10000}") long lastKnownGoodMaxSize) {
+
+    this.eventPublisher = eventPublisher;
+    this.eventOutbox = eventOutbox;
+    this.aggregateCache = aggregateCache;
     this.mapper = mapper;
 
-    productServiceUrl = "http://" + productServiceHost + ":" + productServicePort; 
-    recommendationServiceUrl = "http://" + recommendationServiceHost + ":" + recommendationServicePort;
-    reviewServiceUrl = "http://" + reviewServiceHost + ":" + reviewServicePort;
+    this.productClient = clientFactory.create("product", toBaseUrls(productServiceInstances));
+    this.recommendationClient = clientFactory.create("recommendation", toBaseUrls(recommendationServiceInstances));
+    this.reviewClient = clientFactory.create("review", toBaseUrls(reviewServiceInstances));
+
+    this.productServiceTimeout = Duration.ofMillis(productServiceTimeoutMs);
+    this.recommendationServiceTimeout = Duration.ofMillis(recommendationServiceTimeoutMs);
+    this.reviewServiceTimeout = Duration.ofMillis(reviewServiceTimeoutMs);
+
+    this.hedgingEnabled = hedgingEnabled;
+    this.hedgingMinDelay = Duration.ofMillis(hedgingMinDelayMs);
+    this.productLatencies = new LatencyTracker(hedgingWindowSize, hedgingPercentile);
+    this.recommendationLatencies = new LatencyTracker(hedgingWindowSize, hedgingPercentile);
+    this.reviewLatencies = new LatencyTracker(hedgingWindowSize, hedgingPercentile);
+
+    this.productCircuitBreaker = circuitBreakerRegistry.circuitBreaker("product");
+    this.recommendationCircuitBreaker = circuitBreakerRegistry.circuitBreaker("recommendation");
+    this.reviewCircuitBreaker = circuitBreakerRegistry.circuitBreaker("review");
+    this.lastKnownRecommendations = new LastKnownGoodStore<>(
+            "recommendation", lastKnownGoodMaxSize, Recommendation::getProductId, meterRegistry);
+    this.lastKnownReviews = new LastKnownGoodStore<>(
+            "review", lastKnownGoodMaxSize, Review::getProductId, meterRegistry);
+    this.revalidateMaxSize = batchMaxSize;
+
+    recommendationCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      if (event.getStateTransition().getToState() == CircuitBreaker.State.HALF_OPEN) {
+        revalidate("recommendations", lastKnownRecommendations, this::getRecommendationsByProductIds);
+      }
+    });
+    reviewCircuitBreaker.getEventPublisher().onStateTransition(event -> {
+      if (event.getStateTransition().getToState() == CircuitBreaker.State.HALF_OPEN) {
+        revalidate("reviews", lastKnownReviews, this::getReviewsByProductIds);
+      }
+    });
+
+    Duration batchWindow = Duration.ofMillis(batchWindowMs);
+    this.batchingEnabled = batchingEnabled;
+    this.productLoader = new BatchLoader<>(
+            "products", batchMaxSize, batchWindow, this::getProducts, Product::getProductId);
+    this.recommendationLoader = new BatchLoader<>(
+            "recommendations", batchMaxSize, batchWindow, this::getRecommendationsByProductIds, Recommendation::getProductId);
+    this.reviewLoader = new BatchLoader<>(
+            "reviews", batchMaxSize, batchWindow, this::getReviewsByProductIds, Review::getProductId);
+  }
+
+  @PreDestroy
+  void disposeBatchLoaders() {
+    productLoader.dispose();
+    recommendationLoader.dispose();
+    reviewLoader.dispose();
   }
 
   public Mono<Product> getProduct(int productId) {
-    String url = productServiceUrl + "/product/" + productId;
-    LOG.debug("Will call getProduct API on URL: {}", url);
+    if (batchingEnabled && productId > 0) {
+      LOG.debug("Will batch getProduct lookup for productId: {}", productId);
+      return productLoader.load(productId)
+              .next()
+              .switchIfEmpty(Mono.error(() ->
+                      new NotFoundException(String.format("No product found for productId: %d", productId))));
+    }
+
+    LOG.debug("Will call getProduct API for productId: {}", productId);
 
-    return webClient.get()
-            .uri(url)
-            .retrieve()
-            .bodyToMono(Product.class)
-            .log(LOG.getName(), FINE)
-            .onErrorMap(WebClientResponseException.class, this::handleException);
+    Mono<Product> call = productClient.get(
+            response -> response.bodyToMono(Product.class), productServiceTimeout, "/product/{productId}", productId);
+
+    return callService(call, productServiceTimeout, productLatencies, productCircuitBreaker)
+            .log(LOG.getName(), FINE);
   }
 
 
+  @Override
+  public Flux<Product> getProducts(List<Integer> productIds) {
+    LOG.debug("Will call getProducts API for productIds: {}", productIds);
+
+    Mono<List<Product>> call = productClient.get(
+            response -> response.bodyToFlux(Product.class).collectList(), productServiceTimeout,
+            "/product?productIds={productIds}", joinIds(productIds));
+
+    return callService(call, productServiceTimeout, productLatencies, productCircuitBreaker)
+            .flatMapMany(Flux::fromIterable)
+            .log(LOG.getName(), FINE);
+  }
+
   @Override
   public Mono<Product> createProduct(Product body) {
-    return Mono.fromCallable(() -> {
-      sendMessage("products-out-0", new Event<Integer, Product>(CREATE, body.getProductId(), body));
-      return body;
-    }).log(LOG.getName(), FINE).subscribeOn(publishEventScheduler);
+    return sendMessage("products-out-0", new Event<Integer, Product>(CREATE, body.getProductId(), body))
+            .thenReturn(body)
+            .log(LOG.getName(), FINE);
   }
 
 
   @Override
   public Mono<Void> deleteProduct(int productId) {
-    String url = productServiceUrl + "/product/" + productId;
     LOG.debug("Will delete product with id: {}", productId);
 
-    return Mono
-            .fromRunnable(() ->
-                    sendMessage("products-out-0", new Event<>(DELETE, productId, null) ))
-            .subscribeOn(publishEventScheduler)
-            .then();
+    return sendMessage("products-out-0", new Event<>(DELETE, productId, null));
   }
 
   public Flux<Recommendation> getRecommendations(int productId) {
-      String url = recommendationServiceUrl + "/recommendation?productId=" + productId;
-      LOG.debug("Will call getRecommendations API on URL: {}", url);
+      if (batchingEnabled && productId > 0) {
+        LOG.debug("Will batch getRecommendations lookup for productId: {}", productId);
+        return recommendationLoader.load(productId);
+      }
 
-      return webClient
-              .get()
-              .uri(url)
-              .retrieve()
-              .bodyToFlux(Recommendation.class)
-              .log(LOG.getName(), FINE)
-              .onErrorResume(e -> empty());
+      LOG.debug("Will call getRecommendations API for productId: {}", productId);
+
+      return getRecommendations(
+              Collections.singletonList(productId), "/recommendation?productId={productId}", productId);
+  }
+
+  @Override
+  public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+      LOG.debug("Will call getRecommendationsByProductIds API for productIds: {}", productIds);
+
+      return getRecommendations(
+              productIds, "/recommendation?productIds={productIds}", joinIds(productIds));
+  }
+
+  private Flux<Recommendation> getRecommendations(List<Integer> productIds, String pathTemplate, Object uriVariable) {
+      Mono<List<Recommendation>> call = recommendationClient.get(
+              response -> response.bodyToFlux(Recommendation.class).collectList(), recommendationServiceTimeout,
+              pathTemplate, uriVariable);
+
+      return callService(call, recommendationServiceTimeout, recommendationLatencies, recommendationCircuitBreaker)
+              .doOnNext(recommendations -> lastKnownRecommendations.put(productIds, recommendations))
+              .flatMapMany(Flux::fromIterable)
+              .log(LOG.getName(), FINE);
+  }
+
+  /**
+   * Streams the recommendations of a product as they are decoded, without collecting them,
+   * the timeout bounds the wait for each element. Not batched, hedged or kept as last known good.
+   */
+  public Flux<Recommendation> streamRecommendations(int productId) {
+    LOG.debug("Will stream getRecommendations API for productId: {}", productId);
+
+    Flux<Recommendation> call = recommendationClient.getMany(
+            response -> response.bodyToFlux(Recommendation.class), recommendationServiceTimeout,
+            "/recommendation?productId={productId}", productId);
+    return streamService(call, recommendationCircuitBreaker);
+  }
+
+  public Optional<List<Recommendation>> getLastKnownRecommendations(int productId) {
+    return lastKnownRecommendations.get(productId);
+  }
+
+  public Map<Integer, List<Recommendation>> getLastKnownRecommendations(List<Integer> productIds) {
+    return lastKnownRecommendations.get(productIds);
   }
 
   @Override
   public Mono<Recommendation> createRecommendation(Recommendation body) {
       LOG.debug("Will post new recommendation on through message broker");
 
-      return Mono.fromCallable(() -> {
-        sendMessage("recommendations-out-0",
-                new Event<Integer, Recommendation>(CREATE, body.getProductId(), body));
-        return body;
-      }).subscribeOn(publishEventScheduler);
+      return sendMessage("recommendations-out-0",
+                      new Event<Integer, Recommendation>(CREATE, body.getProductId(), body))
+              .thenReturn(body);
+  }
+
+  @Override
+  public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+      LOG.debug("Will post {} new recommendations through message broker as one batch", body.size());
+
+      return sendMessage("recommendations-out-0",
+                      new Event<Integer, Recommendation>(CREATE_BATCH, body.get(0).getProductId(), null, body))
+              .thenMany(Flux.fromIterable(body));
   }
 
   @Override
   public Mono<Void> deleteRecommendations(int productId) {
       LOG.debug("Will delete recommendation with product id: {}, through message broker", productId);
 
-      return Mono.fromRunnable(() -> sendMessage("recommendations-out-0", new Event<>(DELETE, productId, null))
-      ).subscribeOn(publishEventScheduler).then();
+      return sendMessage("recommendations-out-0", new Event<>(DELETE, productId, null));
   }
 
   public Flux<Review> getReviews(int productId) {
-    String url = reviewServiceUrl + "/review?productId=" + productId;
-    LOG.debug("Will call getReviews API on URL: {}", url);
+    if (batchingEnabled && productId > 0) {
+      LOG.debug("Will batch getReviews lookup for productId: {}", productId);
+      return reviewLoader.load(productId);
+    }
+
+    LOG.debug("Will call getReviews API for productId: {}", productId);
 
-    return webClient.get().uri(url).retrieve()
-            .bodyToFlux(Review.class)
-            .log(LOG.getName(), FINE)
-            .onErrorResume(e -> empty());
+    return getReviews(
+            Collections.singletonList(productId), "/review?productId={productId}", productId);
+  }
+
+  @Override
+  public Flux<Review> getReviewsByProductIds(List<Integer> productIds) {
+    LOG.debug("Will call getReviewsByProductIds API for productIds: {}", productIds);
+
+    return getReviews(productIds, "/review?productIds={productIds}", joinIds(productIds));
+  }
+
+  private Flux<Review> getReviews(List<Integer> productIds, String pathTemplate, Object uriVariable) {
+    Mono<List<Review>> call = reviewClient.get(
+            response -> response.bodyToFlux(Review.class).collectList(), reviewServiceTimeout, pathTemplate, uriVariable);
+
+    return callService(call, reviewServiceTimeout, reviewLatencies, reviewCircuitBreaker)
+            .doOnNext(reviews -> lastKnownReviews.put(productIds, reviews))
+            .flatMapMany(Flux::fromIterable)
+            .log(LOG.getName(), FINE);
+  }
+
+  /**
+   * Streams the reviews of a product as they are decoded, see {@link #streamRecommendations(int)}.
+   */
+  public Flux<Review> streamReviews(int productId) {
+    LOG.debug("Will stream getReviews API for productId: {}", productId);
+
+    Flux<Review> call = reviewClient.getMany(
+            response -> response.bodyToFlux(Review.class), reviewServiceTimeout, "/review?productId={productId}", productId);
+    return streamService(call, reviewCircuitBreaker);
+  }
+
+  public Optional<List<Review>> getLastKnownReviews(int productId) {
+    return lastKnownReviews.get(productId);
+  }
+
+  public Map<Integer, List<Review>> getLastKnownReviews(List<Integer> productIds) {
+    return lastKnownReviews.get(productIds);
   }
 
   @Override
   public Mono<Review> createReview(Review body) {
-    return Mono.fromCallable(() -> {
-      sendMessage("reviews-out-0", new Event<Integer, Review>(CREATE, body.getProductId(), body));
-      return body;
-    }).subscribeOn(publishEventScheduler);
+    return sendMessage("reviews-out-0", new Event<Integer, Review>(CREATE, body.getProductId(), body))
+            .thenReturn(body);
+  }
+
+  @Override
+  public Flux<Review> createReviews(List<Review> body) {
+    LOG.debug("Will post {} new reviews through message broker as one batch", body.size());
+
+    return sendMessage("reviews-out-0", new Event<Integer, Review>(CREATE_BATCH, body.get(0).getProductId(), null, body))
+            .thenMany(Flux.fromIterable(body));
   }
 
   @Override
   public Mono<Void> deleteReviews(int productId) {
     LOG.debug("Will delete review with product id: {}, through message broker", productId);
 
-    return Mono
-            .fromRunnable(() ->
-                    sendMessage("reviews-out-0", new Event<>(DELETE, productId, null)))
-            .subscribeOn(publishEventScheduler).then();
+    return sendMessage("reviews-out-0", new Event<>(DELETE, productId, null));
+  }
+
+  /**
+   * Runs a call to a core service through its circuit breaker, a timeout counts as a failure
+   * of the call while 404 and 422 answers do not.
+   */
+  private <T> Mono<T> callService(Mono<T> call, Duration timeout, LatencyTracker latencies, CircuitBreaker circuitBreaker) {
+    return withTimeout(call, timeout, latencies)
+            .onErrorMap(WebClientResponseException.class, this::handleException)
+            .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+  }
+
+  private <T> Flux<T> streamService(Flux<T> call, CircuitBreaker circuitBreaker) {
+    return call
+            .onErrorMap(WebClientResponseException.class, this::handleException)
+            .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+            .log(LOG.getName(), FINE);
+  }
+
+  /**
+   * Records the latency of a call, bounded by its timeout inside the client. With hedging enabled,
+   * a second identical call is sent when the first has not answered within the configured latency
+   * percentile, and whichever answers first is used, a timeout of the first call ends both.
+   */
+  private <T> Mono<T> withTimeout(Mono<T> call, Duration timeout, LatencyTracker latencies) {
+    Mono<T> timedCall = call
+            .elapsed()
+            .doOnNext(response -> latencies.record(response.getT1()))
+            .map(Tuple2::getT2);
+
+    Duration hedgeDelay = hedgingEnabled ? latencies.percentile() : null;
+
+    if (hedgeDelay == null || hedgeDelay.compareTo(timeout) >= 0) {
+      return timedCall;
+    }
+
+    Duration delay = (hedgeDelay.compareTo(hedgingMinDelay) < 0) ? hedgingMinDelay : hedgeDelay;
+
+    Mono<T> hedgedCall = Mono.delay(delay)
+            .doOnNext(tick -> LOG.debug("No response within {}, sends a hedged request", delay))
+            .then(timedCall);
+
+    return Mono.firstWithSignal(timedCall, hedgedCall);
+  }
+
+  /**
+   * Refreshes, in the background, the entries that were served stale while the circuit was open.
+   * These calls are also the trial calls that decide if the circuit closes again.
+   */
+  private <V> void revalidate(String name, LastKnownGoodStore<V> store, Function<List<Integer>, Flux<V>> lookup) {
+    List<Integer> productIds = store.drainStaleServed(revalidateMaxSize);
+    if (productIds.isEmpty()) {
+      return;
+    }
+
+    LOG.info("Circuit half-open, revalidates {} for {} productIds", name, productIds.size());
+    Flux.defer(() -> lookup.apply(productIds))
+            .subscribe(
+                    value -> {},
+                    ex -> LOG.warn("Revalidation of {} failed: {}", name, ex.toString()));
   }
 
   private Throwable handleException(WebClientResponseException ex) {
@@ -191,17 +438,25 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         return ex; }
   }
 
-  private <K, V> void sendMessage(String topic, Event<K, V> event) {
+  private <V> Mono<Void> sendMessage(String topic, Event<Integer, V> event) {
     LOG.debug("Sending a {} message to {}", event.getEventType(), topic);
 
-    Message<Event<K, V>> message = MessageBuilder.withPayload(event)
-            .setHeader("partitionKey", event.getKey())
-            .build();
+    // with the outbox enabled the event is relayed to the broker after it is stored locally,
+    // the relay invalidates the cached aggregate once the broker has confirmed the event
+    if (eventOutbox.isEnabled()) {
+      return eventOutbox.append(topic, event.getKey(), event);
+    }
 
+    return eventPublisher.publish(topic, event.getKey(), event)
+            .doFinally(signal -> aggregateCache.invalidate(event.getKey()));
+  }
 
-    LOG.debug("message is : {}, on topic: {}", message.getPayload().toString(), topic);
+  private List<String> toBaseUrls(List<String> instances) {
+    return instances.stream().map(String::trim).map(instance -> "http://" + instance).collect(Collectors.toList());
+  }
 
-    streamBridge.send(topic, message);
+  private String joinIds(List<Integer> ids) {
+    return ids.stream().map(String::valueOf).collect(Collectors.joining(","));
   }
 
   private String getErrorMessage(WebClientResponseException ex) {
@@ -212,25 +467,24 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     }
   }
 
-  private Mono<Health> getHealth(String url) {
-    url += "/actuator/health";
-    LOG.debug("Will call the Health API on URL: {}", url);
-    return webClient.get().uri(url).retrieve().bodyToMono(String.class)
+  private Mono<Health> getHealth(CoreServiceClient client, Duration timeout) {
+    LOG.debug("Will call the Health API of {}", client.getName());
+    return client.get(response -> response.bodyToMono(String.class), timeout, "/actuator/health")
             .map(s -> new Health.Builder().up().build())
             .onErrorResume(ex -> Mono.just(new Health.Builder().down(ex).build()))
             .log(LOG.getName(), FINE);
   }
 
   public Mono<Health> getProductHealth() {
-    return getHealth(productServiceUrl);
+    return getHealth(productClient, productServiceTimeout);
   }
 
 
   public Mono<Health> getRecommendationHealth() {
-    return getHealth(recommendationServiceUrl);
+    return getHealth(recommendationClient, recommendationServiceTimeout);
   }
 
   public Mono<Health> getReviewHealth() {
-    return getHealth(reviewServiceUrl);
+    return getHealth(reviewClient, reviewServiceTimeout);
   }
 }
@@ -4,16 +4,24 @@ import mmajd.api.composite.product.*;
 import mmajd.api.core.product.Product;
 import mmajd.api.core.recommendation.Recommendation;
 import mmajd.api.core.review.Review;
+import mmajd.api.exceptions.InvalidInputException;
 import mmajd.api.exceptions.NotFoundException;
 import mmajd.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -26,13 +34,24 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
   private final ServiceUtil serviceUtil;
   private final ProductCompositeIntegration integration;
+  private final ProductAggregateCache aggregateCache;
+  private final ProductAggregateCoalescer aggregateCoalescer;
+
+  private final int maxBatchSize;
 
   @Autowired
   public ProductCompositeServiceImpl(
-          ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+          ServiceUtil serviceUtil,
+          ProductCompositeIntegration integration,
+          ProductAggregateCache aggregateCache,
+          ProductAggregateCoalescer aggregateCoalescer,
+          @Value("${app.max-batch-size:100}") int maxBatchSize) {
 
     this.serviceUtil = serviceUtil;
     this.integration = integration;
+    this.aggregateCache = aggregateCache;
+    this.aggregateCoalescer = aggregateCoalescer;
+    this.maxBatchSize = maxBatchSize;
   }
 
   @Override
@@ -52,30 +71,31 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
       monoList.add(integration.createProduct(product));
 
-      if (body.getRecommendations() != null) {
-        body.getRecommendations().forEach(r -> {
-          Recommendation recommendation = Recommendation.builder()
-                  .productId(body.getProductId())
-                  .recommendationId(r.getRecommendationId())
-                  .author(r.getAuthor())
-                  .rate(r.getRate())
-                  .content(r.getContent())
-                  .build();
-          monoList.add(integration.createRecommendation(recommendation));
-        });
+      // all recommendations, and all reviews, of the product are sent as one batch event each
+      if (body.getRecommendations() != null && !body.getRecommendations().isEmpty()) {
+        List<Recommendation> recommendations = body.getRecommendations().stream()
+                .map(r -> Recommendation.builder()
+                        .productId(body.getProductId())
+                        .recommendationId(r.getRecommendationId())
+                        .author(r.getAuthor())
+                        .rate(r.getRate())
+                        .content(r.getContent())
+                        .build())
+                .collect(Collectors.toList());
+        monoList.add(integration.createRecommendations(recommendations).collectList());
       }
 
-      if (body.getReviews() != null) {
-        body.getReviews().forEach(r -> {
-          Review review = Review.builder()
-                  .productId(body.getProductId())
-                  .reviewId(r.getReviewId())
-                  .author(r.getAuthor())
-                  .content(r.getContent())
-                  .subject(r.getSubject())
-                  .build();
-          monoList.add(integration.createReview(review));
-        });
+      if (body.getReviews() != null && !body.getReviews().isEmpty()) {
+        List<Review> reviews = body.getReviews().stream()
+                .map(r -> Review.builder()
+                        .productId(body.getProductId())
+                        .reviewId(r.getReviewId())
+                        .author(r.getAuthor())
+                        .content(r.getContent())
+                        .subject(r.getSubject())
+                        .build())
+                .collect(Collectors.toList());
+        monoList.add(integration.createReviews(reviews).collectList());
       }
 
       LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.getProductId());
@@ -96,16 +116,111 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
 
     LOG.debug("getCompositeProduct: lookup a product aggregate for productId: {}", productId);
 
+    return aggregateCache.get(productId, id -> aggregateCoalescer.coalesce(id, this::loadProductAggregate))
+            .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
+            .log(LOG.getName(), FINE);
+  }
+
+  private Mono<ProductAggregate> loadProductAggregate(int productId) {
     return Mono.zip(values -> createProductAggregate(
                             (Product) values[0],
-                            (List<Recommendation>) values[1],
-                            (List<Review>) values[2],
+                            (Section<List<Recommendation>>) values[1],
+                            (Section<List<Review>>) values[2],
                             serviceUtil.getServiceAddress()
                     ),
                     integration.getProduct(productId),
-                    integration.getRecommendations(productId).collectList(),
-                    integration.getReviews(productId).collectList())
-            .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
+                    orDegraded(integration.getRecommendations(productId).collectList(),
+                            () -> integration.getLastKnownRecommendations(productId).orElse(Collections.emptyList()),
+                            "recommendations", productId),
+                    orDegraded(integration.getReviews(productId).collectList(),
+                            () -> integration.getLastKnownReviews(productId).orElse(Collections.emptyList()),
+                            "reviews", productId));
+  }
+
+  @Override
+  public Flux<ProductAggregatePart> streamProduct(int productId) {
+
+    LOG.debug("streamCompositeProduct: streams a product aggregate for productId: {}", productId);
+
+    Flux<ProductAggregatePart> header = integration.getProduct(productId)
+            .map(product -> ProductAggregatePart.builder()
+                    .type(ProductAggregatePart.Type.PRODUCT)
+                    .productId(product.getProductId())
+                    .name(product.getName())
+                    .weight(product.getWeight())
+                    .serviceAddress(serviceUtil.getServiceAddress())
+                    .build())
+            .flux();
+
+    Flux<ProductAggregatePart> recommendations = integration.streamRecommendations(productId)
+            .map(r -> ProductAggregatePart.builder()
+                    .type(ProductAggregatePart.Type.RECOMMENDATION)
+                    .productId(productId)
+                    .recommendation(RecommendationSummary.builder()
+                            .recommendationId(r.getRecommendationId())
+                            .rate(r.getRate())
+                            .author(r.getAuthor())
+                            .content(r.getContent())
+                            .build())
+                    .build())
+            .onErrorResume(ex -> degradedPart(productId, "recommendations", ex));
+
+    Flux<ProductAggregatePart> reviews = integration.streamReviews(productId)
+            .map(r -> ProductAggregatePart.builder()
+                    .type(ProductAggregatePart.Type.REVIEW)
+                    .productId(productId)
+                    .review(ReviewSummary.builder()
+                            .reviewId(r.getReviewId())
+                            .author(r.getAuthor())
+                            .subject(r.getSubject())
+                            .content(r.getContent())
+                            .build())
+                    .build())
+            .onErrorResume(ex -> degradedPart(productId, "reviews", ex));
+
+    // all three calls start at once, items arriving before the header are held back by
+    // mergeSequential, bounded by its prefetch, and everything after it is written as it arrives
+    return Flux.mergeSequential(header, Flux.merge(recommendations, reviews))
+            .doOnError(ex -> LOG.warn("streamCompositeProduct failed: {}", ex.toString()))
+            .log(LOG.getName(), FINE);
+  }
+
+  private Mono<ProductAggregatePart> degradedPart(int productId, String section, Throwable ex) {
+    LOG.warn("Streams degraded {} for productId: {}, cause: {}", section, productId, ex.toString());
+    return Mono.just(ProductAggregatePart.builder()
+            .type(ProductAggregatePart.Type.DEGRADED)
+            .productId(productId)
+            .section(section)
+            .build());
+  }
+
+  @Override
+  public Flux<ProductAggregate> getProducts(List<Integer> productIds) {
+    if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+      throw new InvalidInputException(
+              String.format("Invalid number of productIds: %d, expected 1 to %d", productIds.size(), maxBatchSize));
+    }
+
+    List<Integer> ids = productIds.stream().distinct().collect(Collectors.toList());
+
+    LOG.debug("getCompositeProducts: lookup product aggregates for productIds: {}", ids);
+
+    return Mono.zip(
+                    integration.getProducts(ids).collectMap(Product::getProductId),
+                    orDegraded(integration.getRecommendationsByProductIds(ids).collectMultimap(Recommendation::getProductId),
+                            () -> new HashMap<Integer, Collection<Recommendation>>(integration.getLastKnownRecommendations(ids)),
+                            "recommendations", ids),
+                    orDegraded(integration.getReviewsByProductIds(ids).collectMultimap(Review::getProductId),
+                            () -> new HashMap<Integer, Collection<Review>>(integration.getLastKnownReviews(ids)),
+                            "reviews", ids))
+            .flatMapMany(values -> Flux.fromIterable(ids)
+                    .filter(productId -> values.getT1().containsKey(productId))
+                    .map(productId -> createProductAggregate(
+                            values.getT1().get(productId),
+                            sectionOf(values.getT2(), productId),
+                            sectionOf(values.getT3(), productId),
+                            serviceUtil.getServiceAddress())))
+            .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString()))
             .log(LOG.getName(), FINE);
   }
 
@@ -122,12 +237,35 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
             .log(LOG.getName(), FINE).then();
   }
 
+  /**
+   * Recommendations and reviews are optional parts of an aggregate, if they fail, time out or their
+   * circuit is open the aggregate is still returned. The section is then filled with the last known
+   * good values, or left empty, and flagged as degraded.
+   */
+  private <T> Mono<Section<T>> orDegraded(Mono<T> section, Supplier<T> fallback, String sectionName, Object productIds) {
+    return section
+            .map(Section::of)
+            .onErrorResume(ex -> {
+              LOG.warn("Returns degraded {} for productId: {}, cause: {}", sectionName, productIds, ex.toString());
+              return Mono.fromSupplier(() -> Section.degraded(fallback.get()));
+            });
+  }
+
+  private <T> Section<List<T>> sectionOf(Section<Map<Integer, Collection<T>>> section, int productId) {
+    Collection<T> values = section.getValue().get(productId);
+    List<T> list = (values == null) ? Collections.emptyList() : new ArrayList<>(values);
+    return section.isDegraded() ? Section.degraded(list) : Section.of(list);
+  }
+
   private ProductAggregate createProductAggregate(
           Product product,
-          List<Recommendation> recommendations,
-          List<Review> reviews,
+          Section<List<Recommendation>> recommendationSection,
+          Section<List<Review>> reviewSection,
           String serviceAddress) {
 
+    List<Recommendation> recommendations = recommendationSection.getValue();
+    List<Review> reviews = reviewSection.getValue();
+
     System.out.println(product);
 
     String name = product.getName();
@@ -161,6 +299,7 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
     String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).getServiceAddress() : "";
     ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-    return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+    return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses,
+            recommendationSection.isDegraded(), reviewSection.isDegraded());
   }
 }
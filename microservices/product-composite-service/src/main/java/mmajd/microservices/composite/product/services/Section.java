@@ -0,0 +1,31 @@
+package mmajd.microservices.composite.product.services;
+
+/**
+ * Value of one section of a product aggregate, flagged when it could not be fetched normally.
+ */
+class Section<T> {
+
+  private final T value;
+  private final boolean degraded;
+
+  private Section(T value, boolean degraded) {
+    this.value = value;
+    this.degraded = degraded;
+  }
+
+  static <T> Section<T> of(T value) {
+    return new Section<>(value, false);
+  }
+
+  static <T> Section<T> degraded(T value) {
+    return new Section<>(value, true);
+  }
+
+  T getValue() {
+    return value;
+  }
+
+  boolean isDegraded() {
+    return degraded;
+  }
+}
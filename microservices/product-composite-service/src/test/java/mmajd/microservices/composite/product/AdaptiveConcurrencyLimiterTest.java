@@ -0,0 +1,50 @@
+package mmajd.microservices.composite.product;
+
+import mmajd.microservices.composite.product.services.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST_RTT = 10_000_000L;
+    private static final long SLOW_RTT = 100_000_000L;
+
+    @Test
+    void rejectsAboveTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0.5, 2.0, 100);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.releaseIgnored();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void growsWhileFastAndBacksOffWhenSlow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0.5, 2.0, 100);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.tryAcquire();
+            limiter.release(FAST_RTT, false);
+            limiter.release(FAST_RTT, false);
+            limiter.release(FAST_RTT, false);
+        }
+        int grownLimit = limiter.getLimit();
+        assertTrue(grownLimit > 4);
+
+        limiter.tryAcquire();
+        limiter.release(SLOW_RTT, false);
+        assertEquals(grownLimit / 2, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.release(FAST_RTT, true);
+        assertTrue(limiter.getLimit() < grownLimit / 2);
+    }
+}
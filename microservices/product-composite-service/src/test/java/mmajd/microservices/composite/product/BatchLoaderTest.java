@@ -0,0 +1,43 @@
+package mmajd.microservices.composite.product;
+
+import mmajd.api.core.recommendation.Recommendation;
+import mmajd.microservices.composite.product.services.BatchLoader;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple3;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchLoaderTest {
+
+    @Test
+    void concurrentLoadsShareOneBatch() {
+        AtomicInteger batches = new AtomicInteger();
+
+        BatchLoader<Recommendation> loader = new BatchLoader<>("test", 10, Duration.ofMillis(50), ids -> {
+            batches.incrementAndGet();
+            return Flux.fromIterable(ids)
+                    .filter(id -> id != 3)
+                    .map(id -> Recommendation.builder().productId(id).recommendationId(1).build());
+        }, Recommendation::getProductId);
+
+        Tuple3<List<Recommendation>, List<Recommendation>, List<Recommendation>> results = Mono.zip(
+                loader.load(1).collectList(),
+                loader.load(2).collectList(),
+                loader.load(3).collectList()).block();
+
+        assertEquals(1, batches.get());
+        assertEquals(1, results.getT1().size());
+        assertEquals(1, results.getT1().get(0).getProductId());
+        assertEquals(2, results.getT2().get(0).getProductId());
+        assertTrue(results.getT3().isEmpty());
+
+        loader.dispose();
+    }
+}
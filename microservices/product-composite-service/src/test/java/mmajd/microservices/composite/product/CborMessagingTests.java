@@ -0,0 +1,86 @@
+package mmajd.microservices.composite.product;
+
+import mmajd.api.composite.product.ProductAggregate;
+import mmajd.api.composite.product.ReviewSummary;
+import mmajd.api.event.Event;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.CREATE_BATCH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static reactor.core.publisher.Mono.just;
+
+@SpringBootTest(
+        webEnvironment = RANDOM_PORT,
+        properties = {
+                "spring.main.allow-bean-definition-overriding=true",
+                "app.event-publisher.confirm-mode=none",
+                "app.messaging.compression-threshold-bytes=256"})
+@ActiveProfiles("cbor")
+@Import({TestChannelBinderConfiguration.class})
+class CborMessagingTests {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private OutputDestination target;
+
+    @Autowired
+    @Qualifier("cborMessageConverter")
+    private MessageConverter cborConverter;
+
+    @Test
+    void publishesEventsAsCbor() {
+        List<ReviewSummary> reviews = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            reviews.add(new ReviewSummary(i, "author " + i, "subject " + i, "content " + i));
+        }
+        ProductAggregate composite = new ProductAggregate(1, "name", 1, null, reviews, null);
+
+        client.post()
+                .uri("/product-composite")
+                .body(just(composite), ProductAggregate.class)
+                .exchange()
+                .expectStatus().isAccepted();
+
+        Message<byte[]> productMessage = target.receive(0, "products");
+        assertNotNull(productMessage);
+        assertEquals("application/cbor", productMessage.getHeaders().get(MessageHeaders.CONTENT_TYPE).toString());
+        // a CBOR map never starts with '{'
+        assertNotEquals('{', productMessage.getPayload()[0]);
+
+        Event<Integer, Map<String, Object>> productEvent = (Event) cborConverter.fromMessage(productMessage, Event.class);
+        assertEquals(CREATE, productEvent.getEventType());
+        assertEquals(1, productEvent.getKey());
+        assertEquals("name", productEvent.getData().get("name"));
+
+        // the review batch is above the compression threshold, gzip magic bytes first
+        Message<byte[]> reviewMessage = target.receive(0, "reviews");
+        assertNotNull(reviewMessage);
+        assertEquals(0x1f, reviewMessage.getPayload()[0] & 0xff);
+        assertEquals(0x8b, reviewMessage.getPayload()[1] & 0xff);
+
+        Event<Integer, Map<String, Object>> reviewEvent = (Event) cborConverter.fromMessage(reviewMessage, Event.class);
+        assertEquals(CREATE_BATCH, reviewEvent.getEventType());
+        assertEquals(20, reviewEvent.getBatch().size());
+    }
+}
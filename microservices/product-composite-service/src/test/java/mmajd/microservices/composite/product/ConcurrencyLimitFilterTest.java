@@ -0,0 +1,53 @@
+package mmajd.microservices.composite.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mmajd.microservices.composite.product.services.ConcurrencyLimitFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitFilterTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(registry, true, 4, 1, 10, 0.5, 2.0, 100, 1);
+
+    @Test
+    void streamsDoNotTakeASlotNorLowerTheLimit() {
+        WebFilterChain fast = exchange -> Mono.delay(Duration.ofMillis(1)).then();
+        for (int i = 0; i < 20; i++) {
+            filter.filter(exchange("/product-composite/1"), fast).block();
+        }
+        double limit = gauge("composite.concurrency.limit");
+
+        // long-lived streams, while they run and after they end
+        WebFilterChain stream = exchange -> Mono.delay(Duration.ofMillis(300)).then();
+        Disposable running = Mono.when(
+                filter.filter(exchange("/product-composite/1/stream"), stream),
+                filter.filter(exchange("/product-composite/2/stream"), stream)).subscribe();
+        assertEquals(0.0, gauge("composite.concurrency.inflight"));
+
+        Mono.delay(Duration.ofMillis(400)).block();
+        running.dispose();
+
+        filter.filter(exchange("/product-composite/1"), fast).block();
+        assertTrue(gauge("composite.concurrency.limit") >= limit);
+    }
+
+    private MockServerWebExchange exchange(String path) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path));
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+}
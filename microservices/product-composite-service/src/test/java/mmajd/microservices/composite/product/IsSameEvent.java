@@ -35,7 +35,7 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
         LOG.trace("Convert the following json string to a map: {}", eventJson);
 
         Map<String, Object> eventMap = convertJsonStringToMap(eventJson);
-        eventMap.remove("createdAt");
+        removeGeneratedFields(eventMap);
 
         Map<String, Object> expectedEventMap = getMapWithoutCreatedAt(expectedEvent);
 
@@ -72,10 +72,17 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
 
     private Map<String, Object> getMapWithoutCreatedAt(Event event) {
         Map<String, Object> eventMap = convertObjectToMap(event);
-        eventMap.remove("createdAt");
+        removeGeneratedFields(eventMap);
         return eventMap;
     }
 
+    // unique for every event, or taken from the clock
+    private void removeGeneratedFields(Map<String, Object> eventMap) {
+        eventMap.remove("createdAt");
+        eventMap.remove("timestamp");
+        eventMap.remove("eventId");
+    }
+
     private Map<String, Object> convertJsonStringToMap(String eventJson) {
         try {
             return mapper.readValue(eventJson, new TypeReference<HashMap<String, Object>>(){});
@@ -22,9 +22,11 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
-import static java.util.Collections.singletonList;
+import static java.util.Arrays.asList;
 import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.CREATE_BATCH;
 import static mmajd.api.event.Event.Type.DELETE;
 import static mmajd.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -36,7 +38,9 @@ import static reactor.core.publisher.Mono.just;
 
 @SpringBootTest(
         webEnvironment = RANDOM_PORT,
-        properties = {"spring.main.allow-bean-definition-overriding=true"})
+        properties = {
+                "spring.main.allow-bean-definition-overriding=true",
+                "app.event-publisher.confirm-mode=none"})
 @Import({TestChannelBinderConfiguration.class})
 class MessagingTests {
 
@@ -81,8 +85,8 @@ class MessagingTests {
     void createCompositeProduct2() {
 
         ProductAggregate composite = new ProductAggregate(1, "name", 1,
-                singletonList(new RecommendationSummary(1, "a", 1, "c")),
-                singletonList(new ReviewSummary(1, "a", "s", "c")), null);
+                asList(new RecommendationSummary(1, "a", 1, "c"), new RecommendationSummary(2, "a", 2, "c")),
+                asList(new ReviewSummary(1, "a", "s", "c"), new ReviewSummary(2, "a", "s", "c")), null);
         postAndVerifyProduct(composite, ACCEPTED);
 
         final List<String> productMessages = getMessages("products");
@@ -96,21 +100,24 @@ class MessagingTests {
                 new Event(CREATE, composite.getProductId(), new Product(composite.getProductId(), composite.getName(), composite.getWeight(), null));
         assertThat(productMessages.get(0), is(sameEventExceptCreatedAt(expectedProductEvent)));
 
-        // Assert one create recommendation event queued up
+        // Assert one create recommendation batch event queued up
         assertEquals(1, recommendationMessages.size());
 
-        RecommendationSummary rec = composite.getRecommendations().get(0);
-        Event<Integer, Product> expectedRecommendationEvent =
-                new Event(CREATE, composite.getProductId(),
-                        new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null));
+        List<Recommendation> recommendations = composite.getRecommendations().stream()
+                .map(rec -> new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null))
+                .collect(Collectors.toList());
+        Event<Integer, Recommendation> expectedRecommendationEvent =
+                new Event(CREATE_BATCH, composite.getProductId(), null, recommendations);
         assertThat(recommendationMessages.get(0), is(sameEventExceptCreatedAt(expectedRecommendationEvent)));
 
-        // Assert one create review event queued up
+        // Assert one create review batch event queued up
         assertEquals(1, reviewMessages.size());
 
-        ReviewSummary rev = composite.getReviews().get(0);
-        Event<Integer, Product> expectedReviewEvent =
-                new Event(CREATE, composite.getProductId(), new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null));
+        List<Review> reviews = composite.getReviews().stream()
+                .map(rev -> new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null))
+                .collect(Collectors.toList());
+        Event<Integer, Review> expectedReviewEvent =
+                new Event(CREATE_BATCH, composite.getProductId(), null, reviews);
         assertThat(reviewMessages.get(0), is(sameEventExceptCreatedAt(expectedReviewEvent)));
     }
 
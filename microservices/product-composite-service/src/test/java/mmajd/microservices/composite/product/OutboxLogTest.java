@@ -0,0 +1,104 @@
+package mmajd.microservices.composite.product;
+
+import mmajd.microservices.composite.product.services.OutboxLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OutboxLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsAppendedRecordsAcrossSegments() throws Exception {
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 20; i++) {
+                log.append(record(i)).get();
+            }
+
+            long offset = 0;
+            for (int i = 0; i < 20; i++) {
+                OutboxLog.Record record = log.read(offset);
+                assertEquals("event-" + i, new String(record.getData(), StandardCharsets.UTF_8));
+                offset = record.getNextOffset();
+            }
+            assertNull(log.read(offset));
+        }
+    }
+
+    @Test
+    void resumesFromTheAcknowledgedOffsetAfterReopen() throws Exception {
+        long acked;
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_SIZE)) {
+            acked = log.append(record(1)).get();
+            log.append(record(2)).get();
+            log.acknowledge(acked);
+        }
+
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_SIZE)) {
+            assertEquals(acked, log.getAckedOffset());
+
+            OutboxLog.Record record = log.read(log.getAckedOffset());
+            assertEquals("event-2", new String(record.getData(), StandardCharsets.UTF_8));
+            assertNull(log.read(record.getNextOffset()));
+
+            // new records continue after the recovered ones
+            log.append(record(3)).get();
+            assertEquals("event-3", new String(log.read(record.getNextOffset()).getData(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void failedWriteIsRolledBack() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean();
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_SIZE) {
+            @Override
+            protected void force(MappedByteBuffer segment) {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("Disk failure"));
+                }
+                super.force(segment);
+            }
+        }) {
+            long offset = log.append(record(1)).get();
+
+            failing.set(true);
+            assertThrows(ExecutionException.class, () -> log.append(record(2)).get());
+            assertEquals(offset, log.getWriteOffset());
+
+            failing.set(false);
+            log.append(record(3)).get();
+
+            OutboxLog.Record record = log.read(offset);
+            assertEquals("event-3", new String(record.getData(), StandardCharsets.UTF_8));
+            assertNull(log.read(record.getNextOffset()));
+        }
+
+        // nor does the failed record come back after a restart
+        try (OutboxLog log = new OutboxLog(directory, SEGMENT_SIZE)) {
+            OutboxLog.Record record = log.read(0);
+            assertEquals("event-1", new String(record.getData(), StandardCharsets.UTF_8));
+            record = log.read(record.getNextOffset());
+            assertEquals("event-3", new String(record.getData(), StandardCharsets.UTF_8));
+            assertNull(log.read(record.getNextOffset()));
+        }
+    }
+
+    private byte[] record(int i) {
+        return ("event-" + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package mmajd.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mmajd.api.composite.product.ProductAggregate;
+import mmajd.api.core.product.Product;
+import mmajd.api.event.Event;
+import mmajd.microservices.composite.product.services.EventOutbox;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.DELETE;
+import static mmajd.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static reactor.core.publisher.Mono.just;
+
+@SpringBootTest(
+        webEnvironment = RANDOM_PORT,
+        properties = {
+                "spring.main.allow-bean-definition-overriding=true",
+                "app.event-publisher.confirm-mode=none",
+                "app.outbox.enabled=true"})
+@Import({TestChannelBinderConfiguration.class})
+class OutboxTests {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private OutputDestination target;
+
+    @Autowired
+    private EventOutbox eventOutbox;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @DynamicPropertySource
+    static void outboxDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("composite-outbox").toString();
+        registry.add("app.outbox.directory", () -> directory);
+    }
+
+    @Test
+    void relaysEventsInOrderFromTheOutbox() {
+        ProductAggregate composite = new ProductAggregate(1, "name", 1, null, null, null);
+
+        client.post()
+                .uri("/product-composite")
+                .body(just(composite), ProductAggregate.class)
+                .exchange()
+                .expectStatus().isAccepted();
+
+        client.delete()
+                .uri("/product-composite/1")
+                .exchange()
+                .expectStatus().isAccepted();
+
+        // the relay sends asynchronously, wait for the events to arrive
+        Event<Integer, Product> expectedCreate =
+                new Event(CREATE, 1, new Product(1, "name", 1, null));
+        assertThat(receive("products"), is(sameEventExceptCreatedAt(expectedCreate)));
+
+        Event<Integer, Product> expectedDelete = new Event(DELETE, 1, null);
+        assertThat(receive("products"), is(sameEventExceptCreatedAt(expectedDelete)));
+    }
+
+    @Test
+    void relaysTheEventsOfAProductInLogOrderWithinABatch() throws IOException {
+        // appended together, the creates and deletes are written and relayed in one batch
+        Flux.range(1, 20)
+                .flatMapSequential(productId -> Flux.concat(
+                        Mono.just(new Event<Integer, Product>(CREATE, productId, new Product(productId, "name", 1, null))),
+                        Mono.just(new Event<Integer, Product>(DELETE, productId, null))))
+                .flatMapSequential(event -> eventOutbox.append("products-out-0", event.getKey(), event), 40)
+                .blockLast();
+
+        Set<Integer> created = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            JsonNode event = mapper.readTree(receive("products"));
+            int productId = event.get("key").asInt();
+            if ("CREATE".equals(event.get("eventType").asText())) {
+                created.add(productId);
+            } else {
+                assertTrue(created.contains(productId), "DELETE of product " + productId + " relayed before its CREATE");
+            }
+        }
+    }
+
+    private String receive(String bindingName) {
+        long deadline = System.currentTimeMillis() + 5000;
+        Message<byte[]> message = null;
+        while (message == null && System.currentTimeMillis() < deadline) {
+            try {
+                message = target.receive(100, bindingName);
+            } catch (NullPointerException npe) {
+                // no destination is created before the relay has sent its first event, see MessagingTests
+            }
+        }
+        assertNotNull(message, "No event relayed to " + bindingName);
+        return new String(message.getPayload());
+    }
+}
@@ -0,0 +1,59 @@
+package mmajd.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mmajd.api.composite.product.ProductAggregate;
+import mmajd.microservices.composite.product.services.ProductAggregateCache;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProductAggregateCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<Integer, Mono<ProductAggregate>> loader = productId -> {
+        loads.incrementAndGet();
+        return Mono.just(new ProductAggregate(productId, "name", 1, null, null, null));
+    };
+
+    @Test
+    void loadsAfterAWriteAreNotCachedUntilItSettles() throws InterruptedException {
+        ProductAggregateCache cache = new ProductAggregateCache(new SimpleMeterRegistry(), 100, 30, 100);
+
+        cache.invalidate(1);
+        cache.get(1, loader).block();
+        cache.get(1, loader).block();
+        assertEquals(2, loads.get());
+
+        Thread.sleep(150);
+        cache.get(1, loader).block();
+        cache.get(1, loader).block();
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void loadThatRacedWithAWriteOfItsProductIsNotCached() {
+        ProductAggregateCache cache = new ProductAggregateCache(new SimpleMeterRegistry(), 100, 30, 0);
+
+        Sinks.One<ProductAggregate> product1 = Sinks.one();
+        Sinks.One<ProductAggregate> product2 = Sinks.one();
+        Mono<ProductAggregate> load1 = cache.get(1, id -> product1.asMono());
+        Mono<ProductAggregate> load2 = cache.get(2, id -> product2.asMono());
+        load1.subscribe();
+        load2.subscribe();
+
+        // only the product that was written loses its load
+        cache.invalidate(1);
+        product1.tryEmitValue(new ProductAggregate(1, "old", 1, null, null, null));
+        product2.tryEmitValue(new ProductAggregate(2, "name", 1, null, null, null));
+
+        cache.get(1, loader).block();
+        cache.get(2, loader).block();
+        assertEquals(1, loads.get());
+    }
+}
@@ -1,13 +1,19 @@
 package mmajd.microservices.composite.product;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static reactor.core.publisher.Mono.just;
 
 import mmajd.api.composite.product.ProductAggregate;
+import mmajd.api.composite.product.ProductAggregatePart;
 import mmajd.api.composite.product.RecommendationSummary;
 import mmajd.api.composite.product.ReviewSummary;
 import org.junit.jupiter.api.BeforeEach;
@@ -23,20 +29,35 @@ import mmajd.api.core.recommendation.Recommendation;
 import mmajd.api.core.review.Review;
 import mmajd.api.exceptions.InvalidInputException;
 import mmajd.api.exceptions.NotFoundException;
+import mmajd.microservices.composite.product.services.ProductAggregateCoalescer;
 import mmajd.microservices.composite.product.services.ProductCompositeIntegration;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
 @SpringBootTest(webEnvironment = RANDOM_PORT)
 class ProductCompositeServiceApplicationTests {
 
   private static final int PRODUCT_ID_OK = 1;
   private static final int PRODUCT_ID_NOT_FOUND = 2;
   private static final int PRODUCT_ID_INVALID = 3;
+  private static final int PRODUCT_ID_CACHED = 4;
+  private static final int PRODUCT_ID_COALESCED = 5;
+  private static final int PRODUCT_ID_DEGRADED = 6;
+  private static final int PRODUCT_ID_STALE = 7;
 
   @Autowired
   private WebTestClient client;
 
+  @Autowired
+  private ProductAggregateCoalescer coalescer;
+
   @MockBean
   private ProductCompositeIntegration compositeIntegration;
 
@@ -72,6 +93,18 @@ class ProductCompositeServiceApplicationTests {
                             .serviceAddress("mock address")
                             .build())));
 
+    when(compositeIntegration.getProduct(PRODUCT_ID_CACHED))
+            .thenReturn(Mono.just(Product
+                            .builder()
+                            .name("name")
+                            .productId(PRODUCT_ID_CACHED)
+                            .weight(0)
+                            .serviceAddress("mock-address")
+                            .build()));
+
+    when(compositeIntegration.getRecommendations(PRODUCT_ID_CACHED)).thenReturn(Flux.empty());
+    when(compositeIntegration.getReviews(PRODUCT_ID_CACHED)).thenReturn(Flux.empty());
+
     when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND))
             .thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
 
@@ -90,6 +123,156 @@ class ProductCompositeServiceApplicationTests {
             .jsonPath("$.reviews.length()").isEqualTo(1);
   }
 
+  @Test
+  void streamProductById() {
+    when(compositeIntegration.streamRecommendations(PRODUCT_ID_OK))
+            .thenReturn(Flux.error(new TimeoutException("recommendation-service timed out")));
+    when(compositeIntegration.streamReviews(PRODUCT_ID_OK))
+            .thenReturn(Flux.just(
+                    Review.builder().productId(PRODUCT_ID_OK).reviewId(1).subject("s").author("a").content("c").build(),
+                    Review.builder().productId(PRODUCT_ID_OK).reviewId(2).subject("s").author("a").content("c").build()));
+
+    List<ProductAggregatePart> parts = client.get()
+            .uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+            .accept(APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isEqualTo(OK)
+            .returnResult(ProductAggregatePart.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+    assertEquals(4, parts.size());
+    assertEquals(ProductAggregatePart.Type.PRODUCT, parts.get(0).getType());
+    assertEquals(2, parts.stream().filter(p -> p.getType() == ProductAggregatePart.Type.REVIEW).count());
+    assertEquals(1, parts.stream().filter(p -> p.getType() == ProductAggregatePart.Type.DEGRADED).count());
+  }
+
+  @Test
+  void getProductsByIds() {
+    when(compositeIntegration.getProducts(asList(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+            .thenReturn(Flux.just(Product.builder()
+                    .productId(PRODUCT_ID_OK)
+                    .name("name")
+                    .weight(0)
+                    .serviceAddress("mock-address")
+                    .build()));
+
+    when(compositeIntegration.getRecommendationsByProductIds(asList(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+            .thenReturn(Flux.just(Recommendation.builder()
+                    .productId(PRODUCT_ID_OK)
+                    .recommendationId(1)
+                    .author("author")
+                    .content("content")
+                    .rate(1)
+                    .serviceAddress("mock address")
+                    .build()));
+
+    when(compositeIntegration.getReviewsByProductIds(asList(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+            .thenReturn(Flux.just(Review.builder()
+                    .productId(PRODUCT_ID_OK)
+                    .reviewId(1)
+                    .subject("subject")
+                    .author("author")
+                    .content("content")
+                    .serviceAddress("mock address")
+                    .build()));
+
+    client.get()
+            .uri("/product-composite?ids=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND)
+            .accept(APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isEqualTo(OK)
+            .expectHeader().contentType(APPLICATION_JSON)
+            .expectBody()
+            .jsonPath("$.length()").isEqualTo(1)
+            .jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+            .jsonPath("$[0].recommendations.length()").isEqualTo(1)
+            .jsonPath("$[0].reviews.length()").isEqualTo(1);
+  }
+
+  @Test
+  void getProductFromCache() {
+    getAndVerifyProduct(PRODUCT_ID_CACHED, OK)
+            .jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+    getAndVerifyProduct(PRODUCT_ID_CACHED, OK)
+            .jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+
+    verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_CACHED);
+  }
+
+  @Test
+  void getProductWithDegradedSections() {
+    when(compositeIntegration.getProduct(PRODUCT_ID_DEGRADED))
+            .thenReturn(Mono.just(Product
+                            .builder()
+                            .name("name")
+                            .productId(PRODUCT_ID_DEGRADED)
+                            .weight(0)
+                            .serviceAddress("mock-address")
+                            .build()));
+    when(compositeIntegration.getRecommendations(PRODUCT_ID_DEGRADED))
+            .thenReturn(Flux.error(new TimeoutException("recommendation-service timed out")));
+    when(compositeIntegration.getReviews(PRODUCT_ID_DEGRADED)).thenReturn(Flux.empty());
+
+    getAndVerifyProduct(PRODUCT_ID_DEGRADED, OK)
+            .jsonPath("$.productId").isEqualTo(PRODUCT_ID_DEGRADED)
+            .jsonPath("$.recommendations.length()").isEqualTo(0)
+            .jsonPath("$.recommendationsDegraded").isEqualTo(true)
+            .jsonPath("$.reviewsDegraded").isEqualTo(false);
+
+    // degraded aggregates are not cached
+    getAndVerifyProduct(PRODUCT_ID_DEGRADED, OK);
+    verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_DEGRADED);
+  }
+
+  @Test
+  void getProductWithLastKnownGoodSection() {
+    when(compositeIntegration.getProduct(PRODUCT_ID_STALE))
+            .thenReturn(Mono.just(Product
+                            .builder()
+                            .name("name")
+                            .productId(PRODUCT_ID_STALE)
+                            .weight(0)
+                            .serviceAddress("mock-address")
+                            .build()));
+    when(compositeIntegration.getRecommendations(PRODUCT_ID_STALE)).thenReturn(Flux.empty());
+    when(compositeIntegration.getReviews(PRODUCT_ID_STALE))
+            .thenReturn(Flux.error(new IllegalStateException("circuit open")));
+    when(compositeIntegration.getLastKnownReviews(PRODUCT_ID_STALE))
+            .thenReturn(Optional.of(singletonList(Review.builder()
+                    .productId(PRODUCT_ID_STALE)
+                    .reviewId(1)
+                    .subject("subject")
+                    .author("author")
+                    .content("content")
+                    .serviceAddress("mock address")
+                    .build())));
+
+    getAndVerifyProduct(PRODUCT_ID_STALE, OK)
+            .jsonPath("$.reviews.length()").isEqualTo(1)
+            .jsonPath("$.reviewsDegraded").isEqualTo(true)
+            .jsonPath("$.recommendationsDegraded").isEqualTo(false);
+  }
+
+  @Test
+  void concurrentLookupsAreCoalesced() {
+    AtomicInteger loads = new AtomicInteger();
+    Function<Integer, Mono<ProductAggregate>> loader = id -> {
+      loads.incrementAndGet();
+      return Mono.just(new ProductAggregate(id, "name", 1, null, null, null))
+              .delayElement(Duration.ofMillis(200));
+    };
+
+    Mono.zip(
+            coalescer.coalesce(PRODUCT_ID_COALESCED, loader),
+            coalescer.coalesce(PRODUCT_ID_COALESCED, loader),
+            coalescer.coalesce(PRODUCT_ID_COALESCED, loader))
+            .block();
+
+    assertEquals(1, loads.get());
+  }
+
   @Test
   void getProductNotFound() {
     getAndVerifyProduct(PRODUCT_ID_NOT_FOUND, NOT_FOUND)
@@ -0,0 +1,40 @@
+package mmajd.microservices.composite.product;
+
+import mmajd.api.composite.product.ProductAggregate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static reactor.core.publisher.Mono.just;
+
+/**
+ * The test binder never reports a send result, every publish times out waiting for its confirm.
+ */
+@SpringBootTest(
+        webEnvironment = RANDOM_PORT,
+        properties = {
+                "spring.main.allow-bean-definition-overriding=true",
+                "app.event-publisher.confirm-mode=kafka",
+                "app.event-publisher.confirm-timeout-ms=200"})
+@Import({TestChannelBinderConfiguration.class})
+class PublisherConfirmTests {
+
+    @Autowired
+    private WebTestClient client;
+
+    @Test
+    void unconfirmedEventIsAnsweredWith503() {
+        client.post()
+                .uri("/product-composite")
+                .body(just(new ProductAggregate(1, "name", 1, null, null, null)), ProductAggregate.class)
+                .exchange()
+                .expectStatus().isEqualTo(SERVICE_UNAVAILABLE)
+                .expectBody().jsonPath("$.message").value(containsString("was not confirmed"));
+    }
+}
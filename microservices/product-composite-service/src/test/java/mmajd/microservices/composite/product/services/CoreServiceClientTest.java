@@ -0,0 +1,54 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CoreServiceClientTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(50);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger stalledCalls = new AtomicInteger();
+
+    // the stalled instance never answers, the caller only sees its own timeout
+    private final WebClient webClient = WebClient.builder()
+            .exchangeFunction(request -> {
+                if (request.url().getHost().equals("stalled")) {
+                    stalledCalls.incrementAndGet();
+                    return Mono.never();
+                }
+                return Mono.just(ClientResponse.create(HttpStatus.OK).header("Content-Type", "text/plain").body("ok").build());
+            })
+            .build();
+
+    @Test
+    void stalledInstanceIsEjected() {
+        CoreServiceClient client = new CoreServiceClient("test", Arrays.asList("http://fast", "http://stalled"), webClient,
+                new CoreServiceClient.OutlierDetection(3, 3.0, 5, 10_000, 50), registry);
+
+        for (int i = 0; i < 40; i++) {
+            client.get(response -> response.bodyToMono(String.class), TIMEOUT, "/")
+                    .onErrorResume(ex -> Mono.empty())
+                    .block();
+        }
+
+        assertEquals(1.0, registry.get("composite.instances.ejected").tag("instance", "http://stalled").counter().count());
+
+        stalledCalls.set(0);
+        for (int i = 0; i < 20; i++) {
+            assertEquals("ok", client.get(response -> response.bodyToMono(String.class), TIMEOUT, "/").block());
+        }
+        assertEquals(0, stalledCalls.get());
+    }
+}
@@ -0,0 +1,99 @@
+package mmajd.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mmajd.api.exceptions.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventPublisherTest {
+
+    private final StreamBridge streamBridge = mock(StreamBridge.class);
+    private final AtomicReference<Thread> sendThread = new AtomicReference<>();
+
+    private EventPublisher publisher;
+
+    @AfterEach
+    void disposePublisher() {
+        publisher.disposeSendLanes();
+    }
+
+    @Test
+    void rabbitNackIsRejectedWith503() {
+        when(streamBridge.send(eq("products-out-0"), any(Message.class))).thenAnswer(invocation -> {
+            sendThread.set(Thread.currentThread());
+            Message<?> message = invocation.getArgument(1);
+            CorrelationData correlationData = (CorrelationData) message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION);
+            correlationData.getFuture().set(new CorrelationData.Confirm(false, "queue full"));
+            return true;
+        });
+        publisher = publisher("rabbit");
+
+        ServiceUnavailableException thrown = assertThrows(ServiceUnavailableException.class,
+                () -> publisher.publish("products-out-0", 1, "event").block());
+        assertTrue(thrown.getMessage().contains("queue full"));
+        assertNotEquals(Thread.currentThread(), sendThread.get());
+    }
+
+    @Test
+    void missingKafkaSendResultTimesOutWith503() {
+        when(streamBridge.send(eq("products-out-0"), any(Message.class))).thenReturn(true);
+        publisher = publisher("kafka");
+
+        ServiceUnavailableException thrown = assertThrows(ServiceUnavailableException.class,
+                () -> publisher.publish("products-out-0", 1, "event").block());
+        assertTrue(thrown.getMessage().contains("was not confirmed"));
+    }
+
+    @Test
+    void eventsOfAKeyAreSentInPublishOrder() {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        when(streamBridge.send(eq("products-out-0"), any(Message.class))).thenAnswer(invocation -> {
+            Message<?> message = invocation.getArgument(1);
+            sent.add(message.getHeaders().get("partitionKey") + ":" + message.getPayload());
+            return true;
+        });
+        // few permits, most events wait for one
+        publisher = new EventPublisher(streamBridge, new SimpleMeterRegistry(), new DirectChannel(), "none", 100, 4, 1000, 4, false);
+
+        Flux.range(0, 200)
+                .flatMapSequential(i -> publisher.publish("products-out-0", i % 2, i), 200)
+                .blockLast();
+
+        for (int key = 0; key < 2; key++) {
+            String prefix = key + ":";
+            List<Integer> events = sent.stream()
+                    .filter(event -> event.startsWith(prefix))
+                    .map(event -> Integer.parseInt(event.substring(prefix.length())))
+                    .collect(Collectors.toList());
+            List<Integer> sorted = new ArrayList<>(events);
+            Collections.sort(sorted);
+            assertEquals(100, events.size());
+            assertEquals(sorted, events);
+        }
+    }
+
+    private EventPublisher publisher(String confirmMode) {
+        return new EventPublisher(streamBridge, new SimpleMeterRegistry(), new DirectChannel(), confirmMode, 100, 4, 4, 2, false);
+    }
+}
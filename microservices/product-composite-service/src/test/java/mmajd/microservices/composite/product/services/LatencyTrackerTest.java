@@ -0,0 +1,32 @@
+package mmajd.microservices.composite.product.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LatencyTrackerTest {
+
+    @Test
+    void percentileIsRecomputedEveryFewRecords() {
+        LatencyTracker tracker = new LatencyTracker(100, 0.9);
+
+        for (int i = 1; i < 20; i++) {
+            tracker.record(i);
+        }
+        assertNull(tracker.percentile());
+
+        tracker.record(20);
+        assertEquals(Duration.ofMillis(18), tracker.percentile());
+
+        // a window of 100 recomputes every 5 records
+        for (int i = 0; i < 4; i++) {
+            tracker.record(1000);
+        }
+        assertEquals(Duration.ofMillis(18), tracker.percentile());
+        tracker.record(1000);
+        assertEquals(Duration.ofMillis(1000), tracker.percentile());
+    }
+}
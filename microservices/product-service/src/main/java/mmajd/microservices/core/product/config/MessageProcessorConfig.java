@@ -1,54 +1,215 @@
 package mmajd.microservices.core.product.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import mmajd.api.core.product.Product;
 import mmajd.api.core.product.ProductService;
 import mmajd.api.event.Event;
 import mmajd.api.exceptions.EventProcessingException;
+import mmajd.microservices.core.product.services.ProductEventBatchProcessor;
+import mmajd.util.messaging.BatchEventProcessor;
+import mmajd.util.messaging.EventCoalescer;
+import mmajd.util.messaging.EventDeduplicator;
+import mmajd.util.messaging.KeyedLanes;
+import mmajd.util.messaging.MessageAcks;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import mmajd.util.messaging.RetryTopics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Configuration
 public class MessageProcessorConfig {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
 
     private final ProductService productService;
+    private final EventDeduplicator deduplicator;
+    private final EventCoalescer coalescer;
 
     @Autowired
-    public MessageProcessorConfig(ProductService productService) {
+    public MessageProcessorConfig(
+            ProductService productService,
+            MeterRegistry registry,
+            @Value("${app.dedup.lru-size:100000}") int dedupLruSize,
+            @Value("${app.dedup.bloom-capacity:1000000}") int dedupBloomCapacity,
+            @Value("${app.dedup.bloom-false-positive-rate:0.01}") double dedupBloomFalsePositiveRate,
+            @Value("${app.coalescing.window-ms:0}") long coalescingWindowMs,
+            @Value("${app.coalescing.max-pending-keys:10000}") int coalescingMaxPendingKeys) {
+
         this.productService = productService;
+        this.deduplicator = new EventDeduplicator(dedupLruSize, dedupBloomCapacity, dedupBloomFalsePositiveRate, registry);
+        this.coalescer = new EventCoalescer(Duration.ofMillis(coalescingWindowMs), coalescingMaxPendingKeys, registry);
     }
 
     //TODO: switch to event store and saga pattern later
     @Bean
-    public Consumer<Event<Integer, Product>> messageProcessor() {
+    public Consumer<Event<Integer, Product>> messageProcessor(RetryTopics retryTopics) {
         return event -> {
-            LOG.info("Process errMsg created at {}...", event.getCreatedAt());
-
-            switch(event.getEventType()) {
-                case CREATE: {
-                    Product product = event.getData();
-                    LOG.info("Create product with ID: {}", product.getProductId());
-                    productService.createProduct(product).block(); // not best practise
-                }
-                break;
-
-                case DELETE: {
-                    int productId = event.getKey();
-                    LOG.info("Delete recommendations with ProductID: {}", productId);
-                    productService.deleteProduct(productId).block();
-                }
-                break;
-                default: {
-                    String errMsg = String.format("Incorrect event type: %s, expected a CREATED or DELETED", event.getEventType());
-                    LOG.warn(errMsg);
-                    throw new EventProcessingException(errMsg);
+            try {
+                processEvent(event).block(); // not best practise, see reactiveMessageProcessor
+            } catch (RuntimeException ex) {
+                if (!retryTopics.isEnabled()) {
+                    throw ex;
                 }
+                // on to the first retry tier instead of the binder's retries, that block the consumer
+                retryTopics.retryLater(MessageBuilder.withPayload(event).setHeader("partitionKey", event.getKey()).build(), ex);
             }
         };
     }
+
+    /**
+     * Non-blocking alternative to messageProcessor, bound in the reactive_consumer profile.
+     * Retries and dead lettering use the consumer settings of the messageProcessor binding.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> reactiveMessageProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            MeterRegistry registry,
+            @Value("${app.message-processor.concurrency:0}") int concurrency,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval) {
+
+        MessageAcks acks = new MessageAcks();
+        ReactiveEventProcessor<Event<Integer, Product>> processor = singleEventProcessor(
+                streamBridge, retryTopics, acks, maxAttempts, backOffInitialInterval, backOffMaxInterval);
+
+        KeyedLanes<Message<Event<Integer, Product>>> lanes = new KeyedLanes<>(
+                "messageProcessor", concurrency, message -> message.getPayload().getKey(), registry);
+
+        return messages -> lanes.dispatch(coalescer.coalesce(acks.track(messages), acks::ack), processor::processMessage);
+    }
+
+    /**
+     * Alternative to messageProcessor that processes events in bulk, bound in the batch_consumer profile.
+     * Events that fail in bulk are retried one by one and dead lettered, or sent to the retry topics, as in reactiveMessageProcessor.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> batchMessageProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            ProductEventBatchProcessor batchProcessor,
+            @Value("${app.message-processor.batch-size:100}") int batchSize,
+            @Value("${app.message-processor.batch-wait-ms:50}") long batchWaitMs,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval) {
+
+        MessageAcks acks = new MessageAcks();
+        ReactiveEventProcessor<Event<Integer, Product>> singleEvents = singleEventProcessor(
+                streamBridge, retryTopics, acks, maxAttempts, backOffInitialInterval, backOffMaxInterval);
+
+        BatchEventProcessor<Event<Integer, Product>> processor = new BatchEventProcessor<>(
+                batchSize, Duration.ofMillis(batchWaitMs), Event::getEventType,
+                events -> deduplicator.processAll(events, batchProcessor::process), singleEvents, acks);
+
+        return messages -> processor.process(coalescer.coalesce(acks.track(messages), acks::ack));
+    }
+
+    /**
+     * Retry tiers of the retry_topics profile. Failed events wait in a retry destination per tier,
+     * consumed by retryMessageProcessor1 to 3, instead of being retried on the consumer thread.
+     */
+    @Bean
+    public RetryTopics retryTopics(
+            StreamBridge streamBridge,
+            @Value("${app.retry-topics.enabled:false}") boolean enabled,
+            @Value("${app.retry-topics.delays-ms:1000,10000,60000}") List<Long> delaysMs) {
+
+        return new RetryTopics(enabled, delaysMs.stream().map(Duration::ofMillis).collect(Collectors.toList()),
+                (binding, message) -> {
+                    if (!streamBridge.send(binding, message)) {
+                        throw new EventProcessingException("Failed to send message to " + binding);
+                    }
+                });
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> retryMessageProcessor1(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> retryMessageProcessor2(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> retryMessageProcessor3(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    private ReactiveEventProcessor<Event<Integer, Product>> singleEventProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            MessageAcks acks,
+            int maxAttempts,
+            long backOffInitialInterval,
+            long backOffMaxInterval) {
+
+        if (retryTopics.isEnabled()) {
+            return new ReactiveEventProcessor<>(this::processEvent, retryTopics, acks);
+        }
+        return new ReactiveEventProcessor<>(
+                maxAttempts, Duration.ofMillis(backOffInitialInterval), Duration.ofMillis(backOffMaxInterval),
+                this::processEvent,
+                message -> {
+                    if (!streamBridge.send("deadLetters-out-0", message)) {
+                        throw new EventProcessingException("Failed to send message to deadLetters-out-0");
+                    }
+                },
+                acks);
+    }
+
+    // retried after later events of its key, it is dropped if one of them superseded it
+    private Mono<Void> processRetriedEvent(Event<Integer, Product> event) {
+        if (deduplicator.isSuperseded(event)) {
+            LOG.info("Drops retried {} event for key {}, a later event of the key is already applied", event.getEventType(), event.getKey());
+            return Mono.empty();
+        }
+        return processEvent(event);
+    }
+
+    // redelivered events are dropped before they reach the storage
+    private Mono<Void> processEvent(Event<Integer, Product> event) {
+        return deduplicator.process(event, this::applyEvent);
+    }
+
+    private Mono<Void> applyEvent(Event<Integer, Product> event) {
+        LOG.info("Process errMsg created at {}...", event.getCreatedAt());
+
+        switch(event.getEventType()) {
+            case CREATE: {
+                Product product = event.getData();
+                LOG.info("Create product with ID: {}", product.getProductId());
+                return productService.createProduct(product).then();
+            }
+
+            case DELETE: {
+                int productId = event.getKey();
+                LOG.info("Delete recommendations with ProductID: {}", productId);
+                return productService.deleteProduct(productId);
+            }
+
+            default: {
+                String errMsg = String.format("Incorrect event type: %s, expected a CREATED or DELETED", event.getEventType());
+                LOG.warn(errMsg);
+                return Mono.error(new EventProcessingException(errMsg));
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package mmajd.microservices.core.product.services;
+
+import mmajd.api.core.product.Product;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.product.presistence.ProductEntity;
+import mmajd.microservices.core.product.presistence.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Bulk processing of a run of product events of the same type, see BatchEventProcessor.
+ * Creates are written with one insertMany, deletes with one delete by the product ids.
+ */
+@Component
+public class ProductEventBatchProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProductEventBatchProcessor.class);
+
+  private final ProductRepository repository;
+  private final ProductMapper mapper;
+
+  @Autowired
+  public ProductEventBatchProcessor(ProductRepository repository, ProductMapper mapper) {
+    this.repository = repository;
+    this.mapper = mapper;
+  }
+
+  /**
+   * @return positions of the events that were not processed
+   */
+  public Mono<Set<Integer>> process(List<Event<Integer, Product>> events) {
+    switch (events.get(0).getEventType()) {
+      case CREATE:
+        return createProducts(events);
+
+      case DELETE:
+        List<Integer> productIds = events.stream().map(Event::getKey).collect(Collectors.toList());
+        LOG.debug("Deletes products with ProductIDs: {}", productIds);
+        return repository.deleteByProductIdIn(productIds)
+                .log(LOG.getName(), FINE)
+                .thenReturn(new HashSet<>());
+
+      default:
+        // left to the single event processing, that rejects them
+        return Mono.just(allPositions(events));
+    }
+  }
+
+  private Mono<Set<Integer>> createProducts(List<Event<Integer, Product>> events) {
+    Set<Integer> failed = new HashSet<>();
+    List<ProductEntity> entities = new ArrayList<>(events.size());
+    List<Integer> positions = new ArrayList<>(events.size());
+
+    for (int i = 0; i < events.size(); i++) {
+      Product product = events.get(i).getData();
+      if (product == null || product.getProductId() < 1) {
+        failed.add(i);
+        continue;
+      }
+      entities.add(mapper.apiToEntity(product));
+      positions.add(i);
+    }
+
+    LOG.debug("Creates {} products in one bulk insert", entities.size());
+
+    return repository.insertAllUnordered(entities)
+            .log(LOG.getName(), FINE)
+            .map(notInserted -> {
+              notInserted.forEach(index -> failed.add(positions.get(index)));
+              return failed;
+            });
+  }
+
+  private Set<Integer> allPositions(List<?> events) {
+    Set<Integer> positions = new HashSet<>();
+    for (int i = 0; i < events.size(); i++) {
+      positions.add(i);
+    }
+    return positions;
+  }
+}
@@ -12,8 +12,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 import static java.util.logging.Level.FINE;
 
 @RestController
@@ -51,6 +54,23 @@ public class ProductServiceImpl implements ProductService {
             .map(this::setServiceAddress);
   }
 
+  @Override
+  public Flux<Product> getProducts(List<Integer> productIds) {
+    productIds.forEach(productId -> {
+      if (productId < 1) {
+        throw new InvalidInputException(String.format("Invalid productId: %d", productId));
+      }
+    });
+
+    LOG.debug("Will get product info for ids: {}", productIds);
+
+    return repository
+            .findByProductIdIn(productIds)
+            .log(LOG.getName(), FINE)
+            .map(mapper::entityToApi)
+            .map(this::setServiceAddress);
+  }
+
   @Override
   public Mono<Product>  createProduct(Product body) {
     if (body.getProductId() < 1) throw new InvalidInputException(String.format("Invalid productId: %d ", body.getProductId()));
@@ -0,0 +1,69 @@
+package mmajd.microservices.core.product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import mmajd.api.core.product.Product;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.product.presistence.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.coalescing.window-ms=50"})
+class CoalescingTests extends MongodbTestBase {
+
+  @Autowired private ProductRepository repository;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired
+  @Qualifier("reactiveMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> reactiveMessageProcessor;
+
+  @BeforeEach
+  void setupDb() {
+    repository.deleteAll().block();
+  }
+
+  @Test
+  void coalesceSupersededEvents() {
+
+    double coalescedBefore = meterRegistry.counter("messaging.events.coalesced").count();
+
+    List<Message<Event<Integer, Product>>> messages = new ArrayList<>();
+    messages.add(MessageBuilder.withPayload(createProductEvent(1)).build());
+    messages.add(MessageBuilder.withPayload(createProductEvent(2)).build());
+    messages.add(MessageBuilder.withPayload(new Event<Integer, Product>(Event.Type.DELETE, 1, null)).build());
+
+    reactiveMessageProcessor.apply(Flux.fromIterable(messages)).block();
+
+    // the create of product 1 never reached the database
+    assertEquals(1.0, meterRegistry.counter("messaging.events.coalesced").count() - coalescedBefore);
+    assertNull(repository.findByProductId(1).block());
+    assertNotNull(repository.findByProductId(2).block());
+  }
+
+  private Event<Integer, Product> createProductEvent(int productId) {
+    Product product = Product.builder()
+            .productId(productId)
+            .name("Name " + productId)
+            .weight(productId)
+            .serviceAddress("SA")
+            .build();
+    return new Event<>(Event.Type.CREATE, productId, product);
+  }
+}
@@ -0,0 +1,126 @@
+package mmajd.microservices.core.product;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mmajd.api.core.product.Product;
+import mmajd.api.event.Event;
+import mmajd.util.messaging.DlqReplayer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT)
+@Import({TestChannelBinderConfiguration.class})
+class DlqReplayTests extends MongodbTestBase {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired private WebTestClient client;
+
+  @Autowired private InputDestination input;
+
+  @Autowired private OutputDestination target;
+
+  @Autowired private DlqReplayer replayer;
+
+  @Test
+  void replaysMatchingParkedEvents() throws IOException, InterruptedException {
+
+    Map<String, Object> request = new HashMap<>();
+    request.put("eventTypes", "CREATE");
+    request.put("minKey", 1);
+    request.put("maxKey", 2);
+    request.put("ratePerSecond", 1000);
+
+    client.post()
+            .uri("/actuator/dlqreplay")
+            .contentType(APPLICATION_JSON)
+            .bodyValue(request)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody().jsonPath("$.state").isEqualTo("RUNNING");
+
+    // the run ends when its marker, appended to the dead letter queue, comes back
+    Message<byte[]> marker = receive("DLX");
+    assertNotNull(marker.getHeaders().get(DlqReplayer.REPLAY_MARKER_HEADER));
+
+    input.send(toMessage(createProductEvent(1)), "DLX");
+    input.send(toMessage(new Event<Integer, Product>(Event.Type.DELETE, 1, null)), "DLX");
+    input.send(toMessage(createProductEvent(5)), "DLX");
+    input.send(marker, "DLX");
+
+    JsonNode replayed = mapper.readTree(receive("products").getPayload());
+    assertEquals("CREATE", replayed.get("eventType").asText());
+    assertEquals(1, replayed.get("key").asInt());
+
+    // events outside the filter are parked again
+    assertEquals("DELETE", mapper.readTree(receive("DLX").getPayload()).get("eventType").asText());
+    assertEquals(5, mapper.readTree(receive("DLX").getPayload()).get("key").asInt());
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (replayer.isRunning() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    client.get()
+            .uri("/actuator/dlqreplay")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.state").isEqualTo("COMPLETED")
+            .jsonPath("$.replayed").isEqualTo(1)
+            .jsonPath("$.skipped").isEqualTo(2);
+  }
+
+  private Message<byte[]> receive(String destination) {
+    long deadline = System.currentTimeMillis() + 5000;
+    Message<byte[]> message = null;
+    while (message == null && System.currentTimeMillis() < deadline) {
+      try {
+        message = target.receive(100, destination);
+      } catch (NullPointerException npe) {
+        // no destination is created before the first message is sent to it
+      }
+    }
+    assertNotNull(message, "No message sent to " + destination);
+    return message;
+  }
+
+  private Message<byte[]> toMessage(Event<Integer, Product> event) {
+    try {
+      return MessageBuilder.withPayload(mapper.writeValueAsBytes(event))
+              .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+              .build();
+    } catch (JsonProcessingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private Event<Integer, Product> createProductEvent(int productId) {
+    Product product = Product.builder()
+            .productId(productId)
+            .name("Name " + productId)
+            .weight(productId)
+            .serviceAddress("SA")
+            .build();
+    return new Event<>(Event.Type.CREATE, productId, product);
+  }
+}
@@ -10,9 +10,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -32,6 +39,14 @@ class ProductServiceApplicationTests extends MongodbTestBase {
   @Qualifier("messageProcessor") // same name of the bean in the config
   private Consumer<Event<Integer, Product>> messageProcessor;
 
+  @Autowired
+  @Qualifier("reactiveMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> reactiveMessageProcessor;
+
+  @Autowired
+  @Qualifier("batchMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> batchMessageProcessor;
+
   @BeforeEach
   void setupDb() {
 //    StepVerifier.create(repository.deleteAll()).verifyComplete();
@@ -54,6 +69,23 @@ class ProductServiceApplicationTests extends MongodbTestBase {
     getAndVerifyProduct(productId, OK).jsonPath("$.productId").isEqualTo(productId);
   }
 
+  @Test
+  void getProductsByIds() {
+
+    sendCreateProductEvent(1);
+    sendCreateProductEvent(2);
+    sendCreateProductEvent(3);
+
+    client.get()
+            .uri("/product?productIds=1,3,13")
+            .accept(APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isEqualTo(OK)
+            .expectHeader().contentType(APPLICATION_JSON)
+            .expectBody()
+            .jsonPath("$.length()").isEqualTo(2);
+  }
+
   @Test
   void duplicateError() {
 
@@ -74,6 +106,18 @@ class ProductServiceApplicationTests extends MongodbTestBase {
     assertEquals("Duplicate key, Product Id: " + productId, thrown.getMessage());
   }
 
+  @Test
+  void redeliveredEventIsDropped() {
+
+    Event<Integer, Product> event = createProductEvent(1);
+    messageProcessor.accept(event);
+    assertNotNull(repository.findByProductId(1).block());
+
+    // the same event again, it does not reach the database and fail on the duplicate key
+    assertDoesNotThrow(() -> messageProcessor.accept(event));
+    assertEquals(1, (long) repository.count().block());
+  }
+
   @Test
   void deleteProduct() {
 
@@ -88,6 +132,41 @@ class ProductServiceApplicationTests extends MongodbTestBase {
     sendDeleteProductEvent(productId);
   }
 
+  @Test
+  void processEventsReactively() {
+
+    List<Message<Event<Integer, Product>>> messages = new ArrayList<>();
+    for (int productId = 1; productId <= 6; productId++) {
+      messages.add(MessageBuilder.withPayload(createProductEvent(productId)).build());
+    }
+    // same key as an earlier create, processed after it in the same lane
+    messages.add(MessageBuilder.withPayload(new Event<Integer, Product>(Event.Type.DELETE, 3, null)).build());
+
+    reactiveMessageProcessor.apply(Flux.fromIterable(messages)).block();
+
+    assertEquals(5, (long) repository.count().block());
+    assertNull(repository.findByProductId(3).block());
+  }
+
+  @Test
+  void processEventsInBatches() {
+
+    List<Message<Event<Integer, Product>>> messages = new ArrayList<>();
+    for (int productId = 1; productId <= 6; productId++) {
+      messages.add(MessageBuilder.withPayload(createProductEvent(productId)).build());
+    }
+    // a run of deletes between two runs of creates
+    messages.add(MessageBuilder.withPayload(new Event<Integer, Product>(Event.Type.DELETE, 2, null)).build());
+    messages.add(MessageBuilder.withPayload(new Event<Integer, Product>(Event.Type.DELETE, 5, null)).build());
+    messages.add(MessageBuilder.withPayload(createProductEvent(5)).build());
+
+    batchMessageProcessor.apply(Flux.fromIterable(messages)).block();
+
+    assertEquals(5, (long) repository.count().block());
+    assertNull(repository.findByProductId(2).block());
+    assertNotNull(repository.findByProductId(5).block());
+  }
+
   @Test
   void getProductInvalidParameterString() {
 
@@ -130,14 +209,17 @@ class ProductServiceApplicationTests extends MongodbTestBase {
   }
 
   private void sendCreateProductEvent(int productId) {
+    messageProcessor.accept(createProductEvent(productId));
+  }
+
+  private Event<Integer, Product> createProductEvent(int productId) {
     Product product = Product.builder()
             .productId(productId)
             .name("Name " + productId)
             .weight(productId)
             .serviceAddress("SA")
             .build();
-    Event<Integer, Product> e = new Event<>(Event.Type.CREATE, productId, product);
-    messageProcessor.accept(e);
+    return new Event<>(Event.Type.CREATE, productId, product);
   }
 
   private void sendDeleteProductEvent(int productId) {
@@ -0,0 +1,126 @@
+package mmajd.microservices.core.product;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import mmajd.api.core.product.Product;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.product.presistence.ProductRepository;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import mmajd.util.messaging.RetryTopics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.retry-topics.delays-ms=10,10,10"})
+@ActiveProfiles("retry_topics")
+@Import({TestChannelBinderConfiguration.class})
+class RetryTopicsTests extends MongodbTestBase {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired private InputDestination input;
+
+  @Autowired private OutputDestination target;
+
+  @Autowired private ProductRepository repository;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setupDb() {
+    repository.deleteAll().block();
+  }
+
+  @Test
+  void failedEventGoesThroughTheRetryTiersToTheDeadLetterQueue() {
+
+    input.send(toMessage(createProductEvent(1)), "products");
+    assertNotNull(repository.findByProductId(1).block());
+
+    // a second create of the same product fails on the duplicate key, in every tier
+    input.send(toMessage(createProductEvent(1)), "products");
+
+    Message<byte[]> retry = receive("products.retry-1");
+    assertEquals("1", String.valueOf(retry.getHeaders().get(RetryTopics.RETRY_ATTEMPT_HEADER)));
+
+    for (int tier = 2; tier <= 3; tier++) {
+      input.send(retry, "products.retry-" + (tier - 1));
+      retry = receive("products.retry-" + tier);
+      assertEquals(String.valueOf(tier), String.valueOf(retry.getHeaders().get(RetryTopics.RETRY_ATTEMPT_HEADER)));
+    }
+
+    input.send(retry, "products.retry-3");
+    Message<byte[]> deadLetter = receive("DLX");
+    assertTrue(String.valueOf(deadLetter.getHeaders().get(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER)).contains("Duplicate key"));
+  }
+
+  @Test
+  void retriedCreateIsDroppedAfterALaterDeleteOfTheProduct() throws InterruptedException {
+
+    double supersededBefore = meterRegistry.counter("messaging.events.superseded").count();
+
+    Event<Integer, Product> create = createProductEvent(1);
+    Thread.sleep(5);
+    input.send(toMessage(new Event<Integer, Product>(Event.Type.DELETE, 1, null)), "products");
+
+    // the create failed before the delete and is retried after it
+    input.send(MessageBuilder.fromMessage(toMessage(create))
+            .setHeader(RetryTopics.RETRY_ATTEMPT_HEADER, 1)
+            .setHeader(RetryTopics.RETRY_AT_HEADER, System.currentTimeMillis())
+            .build(), "products.retry-1");
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (meterRegistry.counter("messaging.events.superseded").count() == supersededBefore && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(1.0, meterRegistry.counter("messaging.events.superseded").count() - supersededBefore);
+    assertNull(repository.findByProductId(1).block());
+  }
+
+  private Message<byte[]> receive(String destination) {
+    long deadline = System.currentTimeMillis() + 5000;
+    Message<byte[]> message = null;
+    while (message == null && System.currentTimeMillis() < deadline) {
+      try {
+        message = target.receive(100, destination);
+      } catch (NullPointerException npe) {
+        // no destination is created before the first message is sent to it
+      }
+    }
+    assertNotNull(message, "No message sent to " + destination);
+    return message;
+  }
+
+  private Message<byte[]> toMessage(Event<Integer, Product> event) {
+    try {
+      return MessageBuilder.withPayload(mapper.writeValueAsBytes(event)).build();
+    } catch (JsonProcessingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private Event<Integer, Product> createProductEvent(int productId) {
+    Product product = Product.builder()
+            .productId(productId)
+            .name("Name " + productId)
+            .weight(productId)
+            .serviceAddress("SA")
+            .build();
+    return new Event<>(Event.Type.CREATE, productId, product);
+  }
+}
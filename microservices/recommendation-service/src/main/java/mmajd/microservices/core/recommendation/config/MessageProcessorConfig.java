@@ -1,16 +1,35 @@
 package mmajd.microservices.core.recommendation.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import mmajd.api.core.recommendation.Recommendation;
 import mmajd.api.core.recommendation.RecommendationService;
 import mmajd.api.event.Event;
 import mmajd.api.exceptions.EventProcessingException;
+import mmajd.microservices.core.recommendation.services.RecommendationEventBatchProcessor;
+import mmajd.util.messaging.BatchEventProcessor;
+import mmajd.util.messaging.EventCoalescer;
+import mmajd.util.messaging.EventDeduplicator;
+import mmajd.util.messaging.KeyedLanes;
+import mmajd.util.messaging.MessageAcks;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import mmajd.util.messaging.RetryTopics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Configuration
 public class MessageProcessorConfig {
@@ -18,39 +37,189 @@ public class MessageProcessorConfig {
     private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
 
     private final RecommendationService recommendationService;
+    private final EventDeduplicator deduplicator;
+    private final EventCoalescer coalescer;
 
     @Autowired
-    public MessageProcessorConfig(RecommendationService recommendationService) {
+    public MessageProcessorConfig(
+            RecommendationService recommendationService,
+            MeterRegistry registry,
+            @Value("${app.dedup.lru-size:100000}") int dedupLruSize,
+            @Value("${app.dedup.bloom-capacity:1000000}") int dedupBloomCapacity,
+            @Value("${app.dedup.bloom-false-positive-rate:0.01}") double dedupBloomFalsePositiveRate,
+            @Value("${app.coalescing.window-ms:0}") long coalescingWindowMs,
+            @Value("${app.coalescing.max-pending-keys:10000}") int coalescingMaxPendingKeys) {
+
         this.recommendationService = recommendationService;
+        this.deduplicator = new EventDeduplicator(dedupLruSize, dedupBloomCapacity, dedupBloomFalsePositiveRate, registry);
+        this.coalescer = new EventCoalescer(Duration.ofMillis(coalescingWindowMs), coalescingMaxPendingKeys, registry);
     }
 
     @Bean
-    public Consumer<Event<Integer, Recommendation>> messageProcessor() {
+    public Consumer<Event<Integer, Recommendation>> messageProcessor(RetryTopics retryTopics) {
         return event -> {
+            try {
+                processEvent(event).block();
+            } catch (RuntimeException ex) {
+                if (!retryTopics.isEnabled()) {
+                    throw ex;
+                }
+                // on to the first retry tier instead of the binder's retries, that block the consumer
+                retryTopics.retryLater(MessageBuilder.withPayload(event).setHeader("partitionKey", event.getKey()).build(), ex);
+            }
+        };
+    }
+
+    /**
+     * Non-blocking alternative to messageProcessor, bound in the reactive_consumer profile.
+     * Retries and dead lettering use the consumer settings of the messageProcessor binding.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> reactiveMessageProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            MeterRegistry registry,
+            @Value("${app.message-processor.concurrency:0}") int concurrency,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval) {
 
-            LOG.info("Process message created at {}...", event.getCreatedAt());
+        MessageAcks acks = new MessageAcks();
+        ReactiveEventProcessor<Event<Integer, Recommendation>> processor = singleEventProcessor(
+                streamBridge, retryTopics, acks, maxAttempts, backOffInitialInterval, backOffMaxInterval);
 
-            switch (event.getEventType()) {
+        KeyedLanes<Message<Event<Integer, Recommendation>>> lanes = new KeyedLanes<>(
+                "messageProcessor", concurrency, message -> message.getPayload().getKey(), registry);
 
-                case CREATE:
-                    Recommendation recommendation = event.getData();
-                    LOG.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
-                    recommendationService.createRecommendation(recommendation).block();
-                    break;
+        return messages -> lanes.dispatch(coalescer.coalesce(acks.track(messages), acks::ack), processor::processMessage);
+    }
 
-                case DELETE:
-                    int productId = event.getKey();
-                    LOG.info("Delete recommendations with ProductID: {}", productId);
-                    recommendationService.deleteRecommendations(productId).block();
-                    break;
+    /**
+     * Alternative to messageProcessor that processes events in bulk, bound in the batch_consumer profile.
+     * Events that fail in bulk are retried one by one and dead lettered, or sent to the retry topics, as in reactiveMessageProcessor.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> batchMessageProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            RecommendationEventBatchProcessor batchProcessor,
+            @Value("${app.message-processor.batch-size:100}") int batchSize,
+            @Value("${app.message-processor.batch-wait-ms:50}") long batchWaitMs,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval) {
 
-                default:
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-            }
+        MessageAcks acks = new MessageAcks();
+        ReactiveEventProcessor<Event<Integer, Recommendation>> singleEvents = singleEventProcessor(
+                streamBridge, retryTopics, acks, maxAttempts, backOffInitialInterval, backOffMaxInterval);
 
-            LOG.info("Message processing done!");
-        };
+        BatchEventProcessor<Event<Integer, Recommendation>> processor = new BatchEventProcessor<>(
+                batchSize, Duration.ofMillis(batchWaitMs), batchProcessor::kindOf,
+                events -> deduplicator.processAll(events, batchProcessor::process), singleEvents, acks);
+
+        return messages -> processor.process(coalescer.coalesce(acks.track(messages), acks::ack));
+    }
+
+    /**
+     * Retry tiers of the retry_topics profile. Failed events wait in a retry destination per tier,
+     * consumed by retryMessageProcessor1 to 3, instead of being retried on the consumer thread.
+     */
+    @Bean
+    public RetryTopics retryTopics(
+            StreamBridge streamBridge,
+            @Value("${app.retry-topics.enabled:false}") boolean enabled,
+            @Value("${app.retry-topics.delays-ms:1000,10000,60000}") List<Long> delaysMs) {
+
+        return new RetryTopics(enabled, delaysMs.stream().map(Duration::ofMillis).collect(Collectors.toList()),
+                (binding, message) -> {
+                    if (!streamBridge.send(binding, message)) {
+                        throw new EventProcessingException("Failed to send message to " + binding);
+                    }
+                });
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> retryMessageProcessor1(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> retryMessageProcessor2(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> retryMessageProcessor3(RetryTopics retryTopics) {
+        return messages -> retryTopics.processRetries(messages, this::processRetriedEvent, new MessageAcks());
+    }
+
+    private ReactiveEventProcessor<Event<Integer, Recommendation>> singleEventProcessor(
+            StreamBridge streamBridge,
+            RetryTopics retryTopics,
+            MessageAcks acks,
+            int maxAttempts,
+            long backOffInitialInterval,
+            long backOffMaxInterval) {
+
+        if (retryTopics.isEnabled()) {
+            return new ReactiveEventProcessor<>(this::processEvent, retryTopics, acks);
+        }
+        return new ReactiveEventProcessor<>(
+                maxAttempts, Duration.ofMillis(backOffInitialInterval), Duration.ofMillis(backOffMaxInterval),
+                this::processEvent,
+                message -> {
+                    if (!streamBridge.send("deadLetters-out-0", message)) {
+                        throw new EventProcessingException("Failed to send message to deadLetters-out-0");
+                    }
+                },
+                acks);
+    }
+
+    // retried after later events of its key, it is dropped if one of them superseded it
+    private Mono<Void> processRetriedEvent(Event<Integer, Recommendation> event) {
+        if (deduplicator.isSuperseded(event)) {
+            LOG.info("Drops retried {} event for key {}, a later event of the key is already applied", event.getEventType(), event.getKey());
+            return Mono.empty();
+        }
+        return processEvent(event);
+    }
+
+    // redelivered events are dropped before they reach the storage
+    private Mono<Void> processEvent(Event<Integer, Recommendation> event) {
+        return deduplicator.process(event, this::applyEvent);
+    }
+
+    private Mono<Void> applyEvent(Event<Integer, Recommendation> event) {
+
+        LOG.info("Process message created at {}...", event.getCreatedAt());
+
+        Mono<Void> processed;
+        switch (event.getEventType()) {
+
+            case CREATE:
+                Recommendation recommendation = event.getData();
+                LOG.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
+                processed = recommendationService.createRecommendation(recommendation).then();
+                break;
+
+            case CREATE_BATCH:
+                List<Recommendation> recommendations = event.getBatch();
+                LOG.info("Create {} recommendations for ProductID: {}", recommendations.size(), event.getKey());
+                processed = recommendationService.createRecommendations(recommendations).then();
+                break;
+
+            case DELETE:
+                int productId = event.getKey();
+                LOG.info("Delete recommendations with ProductID: {}", productId);
+                processed = recommendationService.deleteRecommendations(productId);
+                break;
+
+            default:
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, CREATE_BATCH or DELETE event";
+                LOG.warn(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
+        }
+
+        return processed.doOnSuccess(v -> LOG.info("Message processing done!"));
     }
 }
@@ -0,0 +1,16 @@
+package mmajd.microservices.core.recommendation.entity;
+
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+
+public interface RecommendationBulkRepository {
+
+    /**
+     * Inserts all entities with one unordered insertMany, a failing entity does not stop the others.
+     *
+     * @return positions of the entities that were not inserted, for example because of a duplicate key
+     */
+    Mono<Set<Integer>> insertAllUnordered(List<RecommendationEntity> entities);
+}
@@ -0,0 +1,48 @@
+package mmajd.microservices.core.recommendation.entity;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class RecommendationBulkRepositoryImpl implements RecommendationBulkRepository {
+
+    private final ReactiveMongoOperations mongo;
+
+    @Autowired
+    RecommendationBulkRepositoryImpl(ReactiveMongoOperations mongo) {
+        this.mongo = mongo;
+    }
+
+    @Override
+    public Mono<Set<Integer>> insertAllUnordered(List<RecommendationEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.just(Collections.emptySet());
+        }
+
+        List<Document> documents = new ArrayList<>(entities.size());
+        for (RecommendationEntity entity : entities) {
+            // as an insert by the template, new entities start at version 0
+            entity.setVersion(0);
+            Document document = new Document();
+            mongo.getConverter().write(entity, document);
+            documents.add(document);
+        }
+
+        return mongo.getCollection(mongo.getCollectionName(RecommendationEntity.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(result -> Collections.<Integer>emptySet())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .map(BulkWriteError::getIndex)
+                        .collect(Collectors.toSet())));
+    }
+}
@@ -3,10 +3,15 @@ package mmajd.microservices.core.recommendation.entity;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.util.Collection;
 
 @Repository
-public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
+public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String>, RecommendationBulkRepository {
     Flux<RecommendationEntity> findByProductId(int product);
+
+    Flux<RecommendationEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    Mono<Long> deleteByProductIdIn(Collection<Integer> productIds);
 }
@@ -0,0 +1,108 @@
+package mmajd.microservices.core.recommendation.services;
+
+import mmajd.api.core.recommendation.Recommendation;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.recommendation.entity.RecommendationEntity;
+import mmajd.microservices.core.recommendation.entity.RecommendationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.util.logging.Level.FINE;
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.CREATE_BATCH;
+import static mmajd.api.event.Event.Type.DELETE;
+
+/**
+ * Bulk processing of a run of recommendation events, see BatchEventProcessor.
+ * CREATE and CREATE_BATCH events are written together with one insertMany, deletes with
+ * one delete by the product ids.
+ */
+@Component
+public class RecommendationEventBatchProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RecommendationEventBatchProcessor.class);
+
+  private final RecommendationRepository repository;
+  private final RecommendationMapper mapper;
+
+  @Autowired
+  public RecommendationEventBatchProcessor(RecommendationRepository repository, RecommendationMapper mapper) {
+    this.repository = repository;
+    this.mapper = mapper;
+  }
+
+  /**
+   * Events that can be processed together in bulk are of the same kind.
+   */
+  public Object kindOf(Event<Integer, Recommendation> event) {
+    return (event.getEventType() == CREATE_BATCH) ? CREATE : event.getEventType();
+  }
+
+  /**
+   * @return positions of the events that were not processed
+   */
+  public Mono<Set<Integer>> process(List<Event<Integer, Recommendation>> events) {
+    Object kind = kindOf(events.get(0));
+    if (kind == CREATE) {
+      return createRecommendations(events);
+    }
+
+    if (kind == DELETE) {
+      List<Integer> productIds = events.stream().map(Event::getKey).collect(Collectors.toList());
+      LOG.debug("Deletes recommendations with ProductIDs: {}", productIds);
+      return repository.deleteByProductIdIn(productIds)
+              .log(LOG.getName(), FINE)
+              .thenReturn(new HashSet<>());
+    }
+
+    // left to the single event processing, that rejects them
+    Set<Integer> all = new HashSet<>();
+    for (int i = 0; i < events.size(); i++) {
+      all.add(i);
+    }
+    return Mono.just(all);
+  }
+
+  private Mono<Set<Integer>> createRecommendations(List<Event<Integer, Recommendation>> events) {
+    Set<Integer> failed = new HashSet<>();
+    List<RecommendationEntity> entities = new ArrayList<>();
+    // event position of every entity, a CREATE_BATCH event adds several entities
+    List<Integer> positions = new ArrayList<>();
+
+    for (int i = 0; i < events.size(); i++) {
+      Event<Integer, Recommendation> event = events.get(i);
+      List<Recommendation> recommendations = (event.getEventType() == CREATE_BATCH)
+              ? event.getBatch()
+              : Collections.singletonList(event.getData());
+
+      if (recommendations == null || recommendations.stream().anyMatch(r -> r == null || r.getProductId() < 1)) {
+        failed.add(i);
+        continue;
+      }
+      for (Recommendation recommendation : recommendations) {
+        entities.add(mapper.apiToEntity(recommendation));
+        positions.add(i);
+      }
+    }
+
+    LOG.debug("Creates {} recommendations in one bulk insert", entities.size());
+
+    // a CREATE_BATCH event partly inserted is processed again alone, its inserted entities then fail as duplicates
+    return repository.insertAllUnordered(entities)
+            .log(LOG.getName(), FINE)
+            .map(notInserted -> {
+              notInserted.forEach(index -> failed.add(positions.get(index)));
+              return failed;
+            });
+  }
+}
@@ -55,6 +55,27 @@ public class RecommendationServiceImpl implements RecommendationService {
             });
   }
 
+  @Override
+  public Flux<Recommendation> getRecommendationsByProductIds(List<Integer> productIds) {
+
+    productIds.forEach(productId -> {
+      if (productId < 1) {
+        throw new InvalidInputException("Invalid productId: " + productId);
+      }
+    });
+
+    LOG.info("Will get recommendations for products with ids={}", productIds);
+
+    return repository
+            .findByProductIdIn(productIds)
+            .log(LOG.getName(), Level.FINE)
+            .map(mapper::entityToApi)
+            .map(e -> {
+              e.setServiceAddress(serviceUtil.getServiceAddress());
+              return e;
+            });
+  }
+
   @Override
   public Mono<Recommendation> createRecommendation(Recommendation body) {
     if (body.getProductId() < 1) {
@@ -74,6 +95,26 @@ public class RecommendationServiceImpl implements RecommendationService {
             .map(mapper::entityToApi);
   }
 
+  @Override
+  public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+    body.forEach(recommendation -> {
+      if (recommendation.getProductId() < 1) {
+        throw new InvalidInputException("Invalid productId: " + recommendation.getProductId());
+      }
+    });
+
+    LOG.debug("createRecommendations: creates {} recommendation entities in one bulk insert", body.size());
+
+    List<RecommendationEntity> entities = mapper.apiListToEntityList(body);
+
+    // all entities are new, so saveAll sends them as one insert
+    return repository.saveAll(entities)
+            .log(LOG.getName(), Level.FINE)
+            .onErrorMap(DuplicateKeyException.class, ex -> new InvalidInputException(
+                    String.format("Duplicate key in batch of %d recommendations: %s", body.size(), ex.getMessage())))
+            .map(mapper::entityToApi);
+  }
+
   @Override
   public Mono<Void> deleteRecommendations(int productId) {
     if (productId < 1) {
@@ -0,0 +1,111 @@
+package mmajd.microservices.core.recommendation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mmajd.api.core.recommendation.Recommendation;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.recommendation.entity.RecommendationRepository;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval=10",
+        "spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval=10"
+})
+@Import({TestChannelBinderConfiguration.class})
+class BatchProcessingTests extends MongodbTestBase {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired private OutputDestination target;
+
+  @Autowired private RecommendationRepository repository;
+
+  @Autowired
+  @Qualifier("batchMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> batchMessageProcessor;
+
+  @BeforeEach
+  void setupDb() {
+    repository.deleteAll().block();
+  }
+
+  @Test
+  void failingEventIsIsolatedFromTheRestOfItsBatch() throws IOException {
+
+    batchMessageProcessor.apply(Flux.just(createRecommendationMessage(1, 1))).block();
+    assertEquals(1, (long) repository.count().block());
+
+    // one run of creates, the second event fails on the duplicate key
+    batchMessageProcessor.apply(Flux.just(
+            createRecommendationMessage(1, 2),
+            createRecommendationMessage(1, 1),
+            createRecommendationsMessage(2, 1, 2))).block();
+
+    assertEquals(2, (long) repository.findByProductId(1).count().block());
+    assertEquals(2, (long) repository.findByProductId(2).count().block());
+
+    Message<byte[]> deadLetter = receive("DLX");
+    assertEquals("Duplicate key, Product ID: 1, Recommendation ID: 1",
+            deadLetter.getHeaders().get(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER));
+    assertEquals(1, mapper.readTree(deadLetter.getPayload()).get("data").get("recommendationId").asInt());
+    assertNull(target.receive(200, "DLX"), "Only the failing event is dead lettered");
+  }
+
+  private Message<byte[]> receive(String destination) {
+    long deadline = System.currentTimeMillis() + 5000;
+    Message<byte[]> message = null;
+    while (message == null && System.currentTimeMillis() < deadline) {
+      try {
+        message = target.receive(100, destination);
+      } catch (NullPointerException npe) {
+        // no destination is created before the first message is sent to it
+      }
+    }
+    assertNotNull(message, "No message sent to " + destination);
+    return message;
+  }
+
+  private Message<Event<Integer, Recommendation>> createRecommendationMessage(int productId, int recommendationId) {
+    return MessageBuilder.withPayload(new Event<>(Event.Type.CREATE, productId, recommendation(productId, recommendationId))).build();
+  }
+
+  private Message<Event<Integer, Recommendation>> createRecommendationsMessage(int productId, int... recommendationIds) {
+    List<Recommendation> recommendations = Arrays.stream(recommendationIds)
+            .mapToObj(recommendationId -> recommendation(productId, recommendationId))
+            .collect(Collectors.toList());
+    return MessageBuilder.withPayload(new Event<Integer, Recommendation>(Event.Type.CREATE_BATCH, productId, null, recommendations)).build();
+  }
+
+  private Recommendation recommendation(int productId, int recommendationId) {
+    return Recommendation.builder()
+            .productId(productId)
+            .recommendationId(recommendationId)
+            .author("Author " + recommendationId)
+            .rate(recommendationId)
+            .content("Content " + recommendationId)
+            .serviceAddress("SA")
+            .build();
+  }
+}
@@ -19,7 +19,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 
 @SpringBootTest(webEnvironment = RANDOM_PORT)
@@ -57,6 +60,29 @@ class RecommendationServiceApplicationTests extends MongodbTestBase {
             .jsonPath("$[2].recommendationId").isEqualTo(3);
   }
 
+  @Test
+  void getRecommendationsByProductIds() {
+
+    sendCreateRecommendationEvent(1, 1);
+    sendCreateRecommendationEvent(1, 2);
+    sendCreateRecommendationEvent(2, 1);
+    sendCreateRecommendationEvent(3, 1);
+
+    getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+            .jsonPath("$.length()").isEqualTo(3);
+  }
+
+  @Test
+  void createRecommendationsInBatch() {
+
+    sendCreateRecommendationsEvent(1, 1, 2, 3);
+
+    assertEquals(3, (long) repository.findByProductId(1).count().block());
+
+    getAndVerifyRecommendationsByProductId("?productId=1", OK)
+            .jsonPath("$.length()").isEqualTo(3);
+  }
+
   @Test
   void duplicateError() {
 
@@ -180,6 +206,22 @@ class RecommendationServiceApplicationTests extends MongodbTestBase {
     messageProcessor.accept(event);
   }
 
+  private void sendCreateRecommendationsEvent(int productId, int... recommendationIds) {
+    List<Recommendation> recommendations = Arrays.stream(recommendationIds)
+            .mapToObj(recommendationId -> Recommendation.builder()
+                    .productId(productId)
+                    .recommendationId(recommendationId)
+                    .author("Author " + recommendationId)
+                    .rate(recommendationId)
+                    .content("Content " + recommendationId)
+                    .serviceAddress("SA")
+                    .build())
+            .collect(Collectors.toList());
+
+    Event<Integer, Recommendation> event = new Event<>(Event.Type.CREATE_BATCH, productId, null, recommendations);
+    messageProcessor.accept(event);
+  }
+
   private void sendDeleteRecommendation(int productId) {
     Event<Integer, Recommendation> event = new Event<>(Event.Type.DELETE, productId, null);
     messageProcessor.accept(event);
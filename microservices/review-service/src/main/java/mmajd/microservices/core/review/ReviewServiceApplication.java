@@ -1,5 +1,6 @@
 package mmajd.microservices.core.review;
 
+import mmajd.util.reactor.VirtualThreadScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,22 +20,35 @@ public class ReviewServiceApplication {
 
   private final Integer threadPoolSize;
   private final Integer taskQueueSize;
+  private final boolean virtualThreads;
+  private final int connectionPoolSize;
 
   @Autowired
   public ReviewServiceApplication(
           @Value("${app.threadPoolSize:10}") Integer threadPoolSize,
-          @Value("${app.taskQueueSize:100}") Integer taskQueueSize
+          @Value("${app.taskQueueSize:100}") Integer taskQueueSize,
+          @Value("${app.jdbc-scheduler.virtual-threads:false}") boolean virtualThreads,
+          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize
   ) {
     this.threadPoolSize = threadPoolSize;
     this.taskQueueSize = taskQueueSize;
+    this.virtualThreads = virtualThreads;
+    this.connectionPoolSize = connectionPoolSize;
+    if (virtualThreads) {
+      VirtualThreadScheduler.checkSupported("app.jdbc-scheduler.virtual-threads", connectionPoolSize);
+    }
   }
 
 
   /** JDBC doesn't support reactor, so use reactor Scheduler
-   * We could use R2DBC, but just giving example on how to support non-reactive code
+   * for the JPA storage, the r2dbc profile uses R2DBC instead, see R2dbcReviewStore
    */
   @Bean
   public Scheduler jdbcScheduler() {
+    if (virtualThreads) {
+      // more concurrent calls than connections would only wait in Hikari
+      return VirtualThreadScheduler.create("jdbc-virtual", connectionPoolSize);
+    }
     LOG.info("Creates a jdbc scheduler with thread pool of size {}, and queue with size {}", threadPoolSize, taskQueueSize);
     return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "jdbc-pool");
   }
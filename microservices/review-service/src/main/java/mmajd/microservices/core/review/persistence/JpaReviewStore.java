@@ -0,0 +1,133 @@
+package mmajd.microservices.core.review.persistence;
+
+import mmajd.api.core.review.Review;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Blocking JPA calls of the {@link ReviewRepository}, run on the jdbcScheduler.
+ * The reads of the api reviews go around JPA with plain JDBC.
+ */
+@Component
+@Profile("!r2dbc")
+public class JpaReviewStore implements ReviewStore {
+
+    private static final String SELECT_REVIEWS =
+            "SELECT product_id, review_id, author, subject, content FROM reviews WHERE product_id ";
+
+    private final ReviewRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Scheduler jdbcScheduler;
+
+    @Autowired
+    public JpaReviewStore(
+            @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+            ReviewRepository repository,
+            PlatformTransactionManager transactionManager,
+            NamedParameterJdbcTemplate jdbcTemplate) {
+
+        this.jdbcScheduler = jdbcScheduler;
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        return Mono.fromCallable(() -> repository.save(entity)).subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<ReviewEntity> saveAll(List<ReviewEntity> entities) {
+        // flushed within the transaction, the inserts go out in JDBC batches
+        return Mono
+                .fromCallable(() -> transactionTemplate.execute(status -> {
+                    List<ReviewEntity> saved = repository.saveAll(entities);
+                    repository.flush();
+                    return saved;
+                }))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId) {
+        return Mono
+                .fromCallable(() -> repository.findByProductId(productId))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds) {
+        return Mono
+                .fromCallable(() -> repository.findByProductIdIn(productIds))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByProductId(int productId, String serviceAddress) {
+        return queryReviews("= :productId", "productId", productId, serviceAddress);
+    }
+
+    @Override
+    public Flux<Review> findReviewsByProductIdIn(Collection<Integer> productIds, String serviceAddress) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return queryReviews("IN (:productIds)", "productIds", productIds, serviceAddress);
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return Mono.fromCallable(() -> repository.deleteByProductId(productId)).subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds) {
+        return Mono.fromCallable(() -> repository.deleteByProductIdIn(productIds)).subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromCallable(repository::count).subscribeOn(jdbcScheduler);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(repository::deleteAllInBatch).subscribeOn(jdbcScheduler).then();
+    }
+
+    // rows are mapped straight to api reviews and collected on the jdbcScheduler, the connection is
+    // released before they are emitted, so a slow subscriber does not hold it
+    private Flux<Review> queryReviews(String condition, String name, Object value, String serviceAddress) {
+        RowMapper<Review> rowMapper = (rs, rowNum) -> new Review(
+                rs.getInt("product_id"),
+                rs.getInt("review_id"),
+                rs.getString("author"),
+                rs.getString("subject"),
+                rs.getString("content"),
+                serviceAddress);
+
+        return Mono
+                .fromCallable(() -> jdbcTemplate.query(
+                        SELECT_REVIEWS + condition + " ORDER BY id", new MapSqlParameterSource(name, value), rowMapper))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+}
@@ -0,0 +1,159 @@
+package mmajd.microservices.core.review.persistence;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import mmajd.api.core.review.Review;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Non-blocking storage of the reviews on R2DBC, used with the r2dbc profile. Rows are streamed
+ * as the driver reads them, on its own threads. The table is created by schema-r2dbc.sql,
+ * with ids generated by the database.
+ */
+@Component
+@Profile("r2dbc")
+public class R2dbcReviewStore implements ReviewStore {
+
+    private static final String COLUMNS = "id, version, product_id, review_id, author, content, subject";
+    private static final String REVIEW_COLUMNS = "product_id, review_id, author, subject, content";
+
+    private final DatabaseClient client;
+    private final TransactionalOperator transactionalOperator;
+
+    @Autowired
+    public R2dbcReviewStore(ConnectionFactory connectionFactory, ReactiveTransactionManager transactionManager) {
+        this.client = DatabaseClient.create(connectionFactory);
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+    }
+
+    @Override
+    public Mono<ReviewEntity> save(ReviewEntity entity) {
+        DatabaseClient.GenericExecuteSpec insert = client.sql(
+                "INSERT INTO reviews (version, product_id, review_id, author, content, subject) " +
+                "VALUES (:version, :productId, :reviewId, :author, :content, :subject)");
+        insert = bind(insert, "version", 0L, Long.class);
+        insert = bind(insert, "productId", entity.getProductId(), Integer.class);
+        insert = bind(insert, "reviewId", entity.getReviewId(), Integer.class);
+        insert = bind(insert, "author", entity.getAuthor(), String.class);
+        insert = bind(insert, "content", entity.getContent(), String.class);
+        insert = bind(insert, "subject", entity.getSubject(), String.class);
+
+        return insert
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .map(id -> {
+                    entity.setId(id);
+                    entity.setVersion(0L);
+                    return entity;
+                });
+    }
+
+    @Override
+    public Flux<ReviewEntity> saveAll(List<ReviewEntity> entities) {
+        return Flux.fromIterable(entities)
+                .concatMap(this::save)
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductId(int productId) {
+        return client.sql("SELECT " + COLUMNS + " FROM reviews WHERE product_id = :productId ORDER BY id")
+                .bind("productId", productId)
+                .map(this::toEntity)
+                .all();
+    }
+
+    @Override
+    public Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds) {
+        return client.sql("SELECT " + COLUMNS + " FROM reviews WHERE product_id IN (:productIds) ORDER BY id")
+                .bind("productIds", productIds)
+                .map(this::toEntity)
+                .all();
+    }
+
+    @Override
+    public Flux<Review> findReviewsByProductId(int productId, String serviceAddress) {
+        return client.sql("SELECT " + REVIEW_COLUMNS + " FROM reviews WHERE product_id = :productId ORDER BY id")
+                .bind("productId", productId)
+                .map(row -> toReview(row, serviceAddress))
+                .all();
+    }
+
+    @Override
+    public Flux<Review> findReviewsByProductIdIn(Collection<Integer> productIds, String serviceAddress) {
+        if (productIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return client.sql("SELECT " + REVIEW_COLUMNS + " FROM reviews WHERE product_id IN (:productIds) ORDER BY id")
+                .bind("productIds", productIds)
+                .map(row -> toReview(row, serviceAddress))
+                .all();
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductId(int productId) {
+        return client.sql("DELETE FROM reviews WHERE product_id = :productId")
+                .bind("productId", productId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds) {
+        return client.sql("DELETE FROM reviews WHERE product_id IN (:productIds)")
+                .bind("productIds", productIds)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return client.sql("SELECT COUNT(*) FROM reviews")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return client.sql("DELETE FROM reviews").fetch().rowsUpdated().then();
+    }
+
+    private ReviewEntity toEntity(Row row) {
+        return ReviewEntity.builder()
+                .id(row.get("id", Long.class))
+                .version(row.get("version", Long.class))
+                .productId(row.get("product_id", Integer.class))
+                .reviewId(row.get("review_id", Integer.class))
+                .author(row.get("author", String.class))
+                .content(row.get("content", String.class))
+                .subject(row.get("subject", String.class))
+                .build();
+    }
+
+    private Review toReview(Row row, String serviceAddress) {
+        return new Review(
+                row.get("product_id", Integer.class),
+                row.get("review_id", Integer.class),
+                row.get("author", String.class),
+                row.get("subject", String.class),
+                row.get("content", String.class),
+                serviceAddress);
+    }
+
+    private static <T> DatabaseClient.GenericExecuteSpec bind(
+            DatabaseClient.GenericExecuteSpec spec, String name, T value, Class<T> type) {
+
+        return (value == null) ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+}
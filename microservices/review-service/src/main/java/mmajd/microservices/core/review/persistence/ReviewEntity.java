@@ -15,8 +15,11 @@ import javax.persistence.*;
 @AllArgsConstructor
 @Builder(setterPrefix = "")
 public class ReviewEntity {
+    // ids are taken 50 at a time from the hibernate_sequence table AUTO used, one row at a time,
+    // pooled-lo (see application.yml) continues after the ids AUTO handed out
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "review_ids")
+    @SequenceGenerator(name = "review_ids", sequenceName = "hibernate_sequence", allocationSize = 50)
     private Long id;
 
     @Version
@@ -0,0 +1,42 @@
+package mmajd.microservices.core.review.persistence;
+
+import mmajd.api.core.review.Review;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Storage of the reviews, on JPA by default, or on R2DBC with the r2dbc profile.
+ * Duplicate keys are signalled as a DataIntegrityViolationException by both.
+ */
+public interface ReviewStore {
+
+    Mono<ReviewEntity> save(ReviewEntity entity);
+
+    /**
+     * Saves all entities in one transaction.
+     */
+    Flux<ReviewEntity> saveAll(List<ReviewEntity> entities);
+
+    Flux<ReviewEntity> findByProductId(int productId);
+
+    Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Reviews read straight from the rows into the api type, for the read path,
+     * no entities are loaded or managed.
+     */
+    Flux<Review> findReviewsByProductId(int productId, String serviceAddress);
+
+    Flux<Review> findReviewsByProductIdIn(Collection<Integer> productIds, String serviceAddress);
+
+    Mono<Integer> deleteByProductId(int productId);
+
+    Mono<Integer> deleteByProductIdIn(Collection<Integer> productIds);
+
+    Mono<Long> count();
+
+    Mono<Void> deleteAll();
+}
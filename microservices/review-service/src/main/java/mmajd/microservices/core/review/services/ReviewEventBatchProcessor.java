@@ -0,0 +1,94 @@
+package mmajd.microservices.core.review.services;
+
+import mmajd.api.core.review.Review;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.CREATE_BATCH;
+import static mmajd.api.event.Event.Type.DELETE;
+
+/**
+ * Bulk processing of a run of review events, see BatchEventProcessor.
+ * The reviews of all CREATE and CREATE_BATCH events are inserted in one transaction, deletes
+ * are one set-based delete by the product ids. If the transaction fails, for example on a
+ * duplicate key, it is rolled back and all its events are processed one by one.
+ */
+@Component
+public class ReviewEventBatchProcessor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReviewEventBatchProcessor.class);
+
+  private final ReviewStore store;
+  private final ReviewMapper mapper;
+
+  @Autowired
+  public ReviewEventBatchProcessor(ReviewStore store, ReviewMapper mapper) {
+    this.store = store;
+    this.mapper = mapper;
+  }
+
+  /**
+   * Events that can be processed together in bulk are of the same kind.
+   */
+  public Object kindOf(Event<Integer, Review> event) {
+    return (event.getEventType() == CREATE_BATCH) ? CREATE : event.getEventType();
+  }
+
+  /**
+   * @return positions of the events that were not processed
+   */
+  public Mono<Set<Integer>> process(List<Event<Integer, Review>> events) {
+    return Mono.defer(() -> processRun(events));
+  }
+
+  private Mono<Set<Integer>> processRun(List<Event<Integer, Review>> events) {
+    Object kind = kindOf(events.get(0));
+    Set<Integer> failed = new HashSet<>();
+
+    if (kind == CREATE) {
+      List<ReviewEntity> entities = new ArrayList<>();
+      for (int i = 0; i < events.size(); i++) {
+        Event<Integer, Review> event = events.get(i);
+        List<Review> reviews = (event.getEventType() == CREATE_BATCH)
+                ? event.getBatch()
+                : Collections.singletonList(event.getData());
+
+        if (reviews == null || reviews.stream().anyMatch(r -> r == null || r.getProductId() < 1)) {
+          failed.add(i);
+          continue;
+        }
+        entities.addAll(mapper.apiListToEntitiesList(reviews));
+      }
+
+      LOG.debug("Creates {} reviews in one transaction", entities.size());
+      return store.saveAll(entities).then(Mono.just(failed));
+
+    } else if (kind == DELETE) {
+      List<Integer> productIds = events.stream().map(Event::getKey).collect(Collectors.toList());
+      return store.deleteByProductIdIn(productIds)
+              .doOnNext(deleted -> LOG.debug("Deleted {} reviews with ProductIDs: {}", deleted, productIds))
+              .thenReturn(failed);
+
+    } else {
+      // left to the single event processing, that rejects them
+      for (int i = 0; i < events.size(); i++) {
+        failed.add(i);
+      }
+      return Mono.just(failed);
+    }
+  }
+}
@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS reviews (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    version BIGINT,
+    product_id INT,
+    review_id INT,
+    author VARCHAR(255),
+    content VARCHAR(255),
+    subject VARCHAR(255),
+    CONSTRAINT views_unique_idx UNIQUE (product_id, review_id)
+);
@@ -0,0 +1,154 @@
+package mmajd.microservices.core.review;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import mmajd.api.core.review.Review;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewStore;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+/**
+ * Tests of the reactive and batch message processors, run with the reviews stored on JPA by
+ * MessageProcessingTests and on R2DBC by MessageProcessingR2dbcTests.
+ */
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval=10",
+        "spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval=10"
+})
+@Import({TestChannelBinderConfiguration.class})
+abstract class AbstractMessageProcessingTests {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired private OutputDestination target;
+
+  @Autowired private ReviewStore store;
+
+  @Autowired
+  @Qualifier("batchMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> batchMessageProcessor;
+
+  @Autowired
+  @Qualifier("reactiveMessageProcessor")
+  private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> reactiveMessageProcessor;
+
+  @BeforeEach
+  void setup() {
+    store.deleteAll().block();
+  }
+
+  @Test
+  void duplicateKeyRollsBackTheRunAndOnlyTheBadEventIsDeadLettered() throws IOException {
+
+    batchMessageProcessor.apply(Flux.just(createReviewMessage(1, 1))).block();
+    assertEquals(1, (long) store.count().block());
+
+    // one run of creates inserted in one transaction, the duplicate key of the second event rolls it back
+    batchMessageProcessor.apply(Flux.just(
+            createReviewMessage(1, 2),
+            createReviewMessage(1, 1),
+            createReviewsMessage(2, 1, 2))).block();
+
+    assertEquals(2, (long) store.findByProductId(1).count().block());
+    assertEquals(2, (long) store.findByProductId(2).count().block());
+
+    Message<byte[]> deadLetter = receive("DLX");
+    assertEquals("Duplicate key, Product Id: 1, Review Id: 1",
+            deadLetter.getHeaders().get(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER));
+    assertEquals(1, mapper.readTree(deadLetter.getPayload()).get("data").get("reviewId").asInt());
+    assertNull(target.receive(200, "DLX"), "Only the failing event is dead lettered");
+  }
+
+  @Test
+  void runsOfDeletesBetweenCreatesKeepTheirOrder() {
+
+    batchMessageProcessor.apply(Flux.just(
+            createReviewsMessage(1, 1, 2),
+            createReviewMessage(2, 1),
+            deleteReviewsMessage(1),
+            createReviewMessage(1, 3))).block();
+
+    assertEquals(1, (long) store.findByProductId(1).count().block());
+    assertEquals(1, (long) store.findByProductId(2).count().block());
+  }
+
+  @Test
+  void reactiveProcessorKeepsTheOrderOfAProductAndDeadLettersTheFailingEvent() {
+
+    reactiveMessageProcessor.apply(Flux.just(
+            createReviewMessage(1, 1),
+            createReviewMessage(2, 1),
+            deleteReviewsMessage(1),
+            createReviewMessage(1, 2),
+            createReviewMessage(2, 1))).block();
+
+    assertEquals(Collections.singletonList(2), reviewIds(1));
+    assertEquals(Collections.singletonList(1), reviewIds(2));
+
+    Message<byte[]> deadLetter = receive("DLX");
+    assertEquals("Duplicate key, Product Id: 2, Review Id: 1",
+            deadLetter.getHeaders().get(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER));
+    assertNull(target.receive(200, "DLX"), "Only the failing event is dead lettered");
+  }
+
+  private List<Integer> reviewIds(int productId) {
+    return store.findByProductId(productId).map(ReviewEntity::getReviewId).collectList().block();
+  }
+
+  private Message<byte[]> receive(String destination) {
+    long deadline = System.currentTimeMillis() + 5000;
+    Message<byte[]> message = null;
+    while (message == null && System.currentTimeMillis() < deadline) {
+      try {
+        message = target.receive(100, destination);
+      } catch (NullPointerException npe) {
+        // no destination is created before the first message is sent to it
+      }
+    }
+    assertNotNull(message, "No message sent to " + destination);
+    return message;
+  }
+
+  private Message<Event<Integer, Review>> createReviewMessage(int productId, int reviewId) {
+    return MessageBuilder.withPayload(new Event<>(Event.Type.CREATE, productId, review(productId, reviewId))).build();
+  }
+
+  private Message<Event<Integer, Review>> createReviewsMessage(int productId, int... reviewIds) {
+    List<Review> reviews = Arrays.stream(reviewIds)
+            .mapToObj(reviewId -> review(productId, reviewId))
+            .collect(Collectors.toList());
+    return MessageBuilder.withPayload(new Event<Integer, Review>(Event.Type.CREATE_BATCH, productId, null, reviews)).build();
+  }
+
+  private Message<Event<Integer, Review>> deleteReviewsMessage(int productId) {
+    return MessageBuilder.withPayload(new Event<Integer, Review>(Event.Type.DELETE, productId, null)).build();
+  }
+
+  private Review review(int productId, int reviewId) {
+    return new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+  }
+}
@@ -0,0 +1,104 @@
+package mmajd.microservices.core.review;
+
+import mmajd.api.core.review.Review;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.NONE;
+
+/**
+ * Tests of the {@link ReviewStore}, run against JpaReviewStore by JpaReviewStoreTests
+ * and against R2dbcReviewStore by R2dbcReviewStoreTests.
+ */
+@SpringBootTest(webEnvironment = NONE, properties = {"spring.cloud.stream.defaultBinder=rabbit"})
+abstract class AbstractReviewStoreTests {
+
+  @Autowired
+  private ReviewStore store;
+
+  @BeforeEach
+  void setup() {
+    store.deleteAll().block();
+  }
+
+  @Test
+  void saveAndFindByProductId() {
+    ReviewEntity saved = store.save(entity(1, 1)).block();
+
+    assertNotNull(saved.getId());
+    assertEquals(0, (long) saved.getVersion());
+
+    List<ReviewEntity> found = store.findByProductId(1).collectList().block();
+    assertEquals(1, found.size());
+    assertEquals(saved.getId(), found.get(0).getId());
+    assertEquals("a1", found.get(0).getAuthor());
+    assertEquals(1, (long) store.count().block());
+  }
+
+  @Test
+  void duplicateKeyIsADataIntegrityViolation() {
+    store.save(entity(1, 1)).block();
+
+    assertThrows(DataIntegrityViolationException.class, () -> store.save(entity(1, 1)).block());
+    assertEquals(1, (long) store.count().block());
+  }
+
+  @Test
+  void saveAllIsRolledBackOnADuplicateKey() {
+    store.save(entity(1, 1)).block();
+
+    assertThrows(DataIntegrityViolationException.class, () ->
+            store.saveAll(Arrays.asList(entity(1, 2), entity(1, 1), entity(1, 3))).blockLast());
+    assertEquals(1, (long) store.count().block());
+
+    store.saveAll(Arrays.asList(entity(1, 2), entity(1, 3))).blockLast();
+    assertEquals(3, (long) store.count().block());
+  }
+
+  @Test
+  void findReviewsInTheOrderTheyWereSaved() {
+    store.saveAll(Arrays.asList(entity(1, 2), entity(2, 1), entity(1, 1), entity(3, 1))).blockLast();
+
+    List<Review> reviews = store.findReviewsByProductId(1, "SA").collectList().block();
+    assertEquals(Arrays.asList(2, 1), reviews.stream().map(Review::getReviewId).collect(Collectors.toList()));
+    assertTrue(reviews.stream().allMatch(review -> "SA".equals(review.getServiceAddress())));
+
+    assertEquals(3, (long) store.findReviewsByProductIdIn(Arrays.asList(1, 2), "SA").count().block());
+    assertEquals(0, (long) store.findReviewsByProductIdIn(Collections.emptyList(), "SA").count().block());
+    assertEquals(2, (long) store.findByProductIdIn(Arrays.asList(2, 3)).count().block());
+  }
+
+  @Test
+  void deleteByProductIdAnswersTheDeletedRows() {
+    store.saveAll(Arrays.asList(entity(1, 1), entity(1, 2), entity(2, 1), entity(3, 1))).blockLast();
+
+    assertEquals(2, (int) store.deleteByProductId(1).block());
+    assertEquals(0, (int) store.deleteByProductId(1).block());
+    assertEquals(2, (int) store.deleteByProductIdIn(Arrays.asList(2, 3)).block());
+    assertEquals(0, (long) store.count().block());
+  }
+
+  private ReviewEntity entity(int productId, int reviewId) {
+    return ReviewEntity.builder()
+            .productId(productId)
+            .reviewId(reviewId)
+            .author("a" + reviewId)
+            .content("c")
+            .subject("s")
+            .build();
+  }
+}
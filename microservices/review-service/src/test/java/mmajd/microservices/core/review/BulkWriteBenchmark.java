@@ -0,0 +1,196 @@
+package mmajd.microservices.core.review;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
+
+/**
+ * Rows per second of the review writes, one row per transaction with an id generated one at a
+ * time and entity by entity deletes as before, against batched inserts in one transaction with
+ * pooled ids and the set-based delete. Excluded from the test task, run with the benchmark task.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class BulkWriteBenchmark extends MySqlTestBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkWriteBenchmark.class);
+
+    private static final int PRODUCTS = 20;
+    private static final int REVIEWS_PER_PRODUCT = 100;
+    private static final int ROWS = PRODUCTS * REVIEWS_PER_PRODUCT;
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAllInBatch();
+        deleteLegacyReviews();
+    }
+
+    @Test
+    void rowsPerSecond() {
+        // warms up the connection pool, the statement caches and the JIT
+        insertOneByOne(legacyReviews());
+        deleteLegacyReviews();
+        insertBatched(reviews());
+        deleteOneByOne();
+        insertBatched(reviews());
+        deleteSetBased();
+
+        long start = System.nanoTime();
+        insertOneByOne(legacyReviews());
+        report("insert, one row per transaction and id", start);
+        assertEquals(ROWS, countLegacyReviews());
+
+        start = System.nanoTime();
+        insertBatched(reviews());
+        report("insert, batched in one transaction", start);
+        assertEquals(ROWS, repository.count());
+
+        start = System.nanoTime();
+        deleteOneByOne();
+        report("delete, load and delete each entity", start);
+        assertEquals(0, repository.count());
+
+        insertBatched(reviews());
+        start = System.nanoTime();
+        deleteSetBased();
+        report("delete, set-based per product", start);
+        assertEquals(0, repository.count());
+    }
+
+    // as repository.save did, a transaction per row, each taking its id from the sequence first
+    private void insertOneByOne(List<LegacyReviewEntity> entities) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        entities.forEach(entity -> transaction.executeWithoutResult(status -> entityManager.persist(entity)));
+    }
+
+    private long countLegacyReviews() {
+        return entityManager.createQuery("select count(r) from LegacyReview r", Long.class).getSingleResult();
+    }
+
+    private void deleteLegacyReviews() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                entityManager.createQuery("delete from LegacyReview").executeUpdate());
+    }
+
+    private void insertBatched(List<ReviewEntity> entities) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            repository.saveAll(entities);
+            repository.flush();
+        });
+    }
+
+    private void deleteOneByOne() {
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            repository.deleteAll(repository.findByProductId(productId));
+        }
+    }
+
+    private void deleteSetBased() {
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            repository.deleteByProductId(productId);
+        }
+    }
+
+    private List<ReviewEntity> reviews() {
+        List<ReviewEntity> entities = new ArrayList<>(ROWS);
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            for (int reviewId = 1; reviewId <= REVIEWS_PER_PRODUCT; reviewId++) {
+                entities.add(ReviewEntity.builder()
+                        .productId(productId)
+                        .reviewId(reviewId)
+                        .author("a")
+                        .content("c")
+                        .subject("s")
+                        .build());
+            }
+        }
+        return entities;
+    }
+
+    private List<LegacyReviewEntity> legacyReviews() {
+        List<LegacyReviewEntity> entities = new ArrayList<>(ROWS);
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            for (int reviewId = 1; reviewId <= REVIEWS_PER_PRODUCT; reviewId++) {
+                LegacyReviewEntity entity = new LegacyReviewEntity();
+                entity.setProductId(productId);
+                entity.setReviewId(reviewId);
+                entity.setAuthor("a");
+                entity.setContent("c");
+                entity.setSubject("s");
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    private void report(String operation, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+        LOG.info("{}: {} rows in {} ms, {} rows/s",
+                operation, ROWS, Math.round(seconds * 1000), Math.round(ROWS / seconds));
+    }
+
+    /**
+     * The review entity as mapped before the pooled generator, GenerationType.AUTO on MySQL is a
+     * table backed sequence incremented by 1, a round trip to it for every insert. In a table and
+     * sequence of its own, the ids of the reviews are not taken from it.
+     */
+    @Entity(name = "LegacyReview")
+    @Table(name = "benchmark_reviews")
+    @Setter
+    @Getter
+    @NoArgsConstructor
+    static class LegacyReviewEntity {
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "benchmark_review_ids")
+        @SequenceGenerator(name = "benchmark_review_ids", sequenceName = "benchmark_review_sequence", allocationSize = 1)
+        private Long id;
+
+        @Version
+        private Long version;
+
+        private Integer productId;
+        private Integer reviewId;
+        private String author;
+        private String content;
+        private String subject;
+    }
+}
@@ -0,0 +1,54 @@
+package mmajd.microservices.core.review;
+
+import com.zaxxer.hikari.HikariDataSource;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import reactor.test.StepVerifier;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The tests of AbstractReviewStoreTests against JpaReviewStore, in MySQL.
+ */
+class JpaReviewStoreTests extends AbstractReviewStoreTests {
+
+  @Autowired
+  private ReviewStore store;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @DynamicPropertySource
+  static void mySqlProperties(DynamicPropertyRegistry registry) {
+    MySqlTestBase.databaseProperties(registry);
+  }
+
+  @Test
+  void slowSubscriberDoesNotHoldAConnection() {
+    store.saveAll(Arrays.asList(entity(1, 1), entity(1, 2))).blockLast();
+
+    StepVerifier.create(store.findReviewsByProductId(1, "SA"), 1)
+            .expectNextCount(1)
+            .then(() -> assertEquals(0, ((HikariDataSource) dataSource).getHikariPoolMXBean().getActiveConnections()))
+            .thenRequest(1)
+            .expectNextCount(1)
+            .verifyComplete();
+  }
+
+  private ReviewEntity entity(int productId, int reviewId) {
+    return ReviewEntity.builder()
+            .productId(productId)
+            .reviewId(reviewId)
+            .author("a")
+            .content("c")
+            .subject("s")
+            .build();
+  }
+}
@@ -0,0 +1,8 @@
+package mmajd.microservices.core.review;
+
+/**
+ * The tests of AbstractMessageProcessingTests with the reviews stored on R2DBC, in H2.
+ */
+@R2dbcTest
+class MessageProcessingR2dbcTests extends AbstractMessageProcessingTests {
+}
@@ -0,0 +1,15 @@
+package mmajd.microservices.core.review;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * The tests of AbstractMessageProcessingTests with the reviews stored on JPA, in MySQL.
+ */
+class MessageProcessingTests extends AbstractMessageProcessingTests {
+
+  @DynamicPropertySource
+  static void mySqlProperties(DynamicPropertyRegistry registry) {
+    MySqlTestBase.databaseProperties(registry);
+  }
+}
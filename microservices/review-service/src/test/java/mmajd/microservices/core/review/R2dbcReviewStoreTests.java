@@ -0,0 +1,8 @@
+package mmajd.microservices.core.review;
+
+/**
+ * The tests of AbstractReviewStoreTests against R2dbcReviewStore, in H2.
+ */
+@R2dbcTest
+class R2dbcReviewStoreTests extends AbstractReviewStoreTests {
+}
@@ -0,0 +1,24 @@
+package mmajd.microservices.core.review;
+
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores the reviews on R2DBC, in an in-memory H2 database instead of the MySQL container of
+ * {@link MySqlTestBase}, for the R2DBC runs of the abstract tests.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@ActiveProfiles("r2dbc")
+@TestPropertySource(properties = {
+        "spring.r2dbc.url=r2dbc:h2:mem:///review-db?options=DB_CLOSE_DELAY=-1;MODE=MySQL",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password="
+})
+public @interface R2dbcTest {
+}
@@ -0,0 +1,127 @@
+package mmajd.microservices.core.review;
+
+import mmajd.api.core.review.Review;
+import mmajd.microservices.core.review.persistence.JpaReviewStore;
+import mmajd.microservices.core.review.persistence.ReviewEntity;
+import mmajd.microservices.core.review.persistence.ReviewRepository;
+import mmajd.microservices.core.review.services.ReviewMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.scheduler.Schedulers;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
+
+/**
+ * Bytes allocated and time per getReviews request, loading entities in a read-only transaction
+ * and mapping them to reviews as before, against reading the rows straight into reviews.
+ * The store runs on the calling thread, so its allocations are those of the thread.
+ * Excluded from the test task, run with the benchmark task.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ReadPathBenchmark extends MySqlTestBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadPathBenchmark.class);
+
+    private static final int PRODUCTS = 20;
+    private static final int REVIEWS_PER_PRODUCT = 50;
+    private static final int REQUESTS = 1000;
+    private static final String SERVICE_ADDRESS = "host/1.2.3.4:7003";
+
+    private final ReviewMapper mapper = Mappers.getMapper(ReviewMapper.class);
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JpaReviewStore store;
+
+    @BeforeEach
+    void setupDb() {
+        store = new JpaReviewStore(Schedulers.immediate(), repository, transactionManager,
+                new NamedParameterJdbcTemplate(dataSource));
+
+        repository.deleteAllInBatch();
+        List<ReviewEntity> entities = new ArrayList<>();
+        for (int productId = 1; productId <= PRODUCTS; productId++) {
+            for (int reviewId = 1; reviewId <= REVIEWS_PER_PRODUCT; reviewId++) {
+                entities.add(ReviewEntity.builder()
+                        .productId(productId)
+                        .reviewId(reviewId)
+                        .author("Author " + reviewId)
+                        .content("Content " + reviewId)
+                        .subject("Subject " + reviewId)
+                        .build());
+            }
+        }
+        store.saveAll(entities).blockLast();
+    }
+
+    @Test
+    void allocationsPerRequest() {
+        assertEquals(entityReadPath(1), projectionReadPath(1));
+
+        // warms up the connection pool, the statement caches and the JIT
+        run(this::entityReadPath);
+        run(this::projectionReadPath);
+
+        report("entities mapped to reviews", this::entityReadPath);
+        report("rows projected to reviews", this::projectionReadPath);
+    }
+
+    private List<Review> entityReadPath(int productId) {
+        List<Review> reviews = mapper.entitiesListToApiList(repository.findByProductId(productId));
+        reviews.forEach(review -> review.setServiceAddress(SERVICE_ADDRESS));
+        return reviews;
+    }
+
+    private List<Review> projectionReadPath(int productId) {
+        return store.findReviewsByProductId(productId, SERVICE_ADDRESS).collectList().block();
+    }
+
+    private void run(IntFunction<List<Review>> readPath) {
+        for (int request = 0; request < REQUESTS; request++) {
+            assertEquals(REVIEWS_PER_PRODUCT, readPath.apply(request % PRODUCTS + 1).size());
+        }
+    }
+
+    private void report(String name, IntFunction<List<Review>> readPath) {
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+
+        run(readPath);
+
+        long micros = (System.nanoTime() - start) / 1000;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        LOG.info("{}: {} requests of {} reviews, {} bytes and {} us per request",
+                name, REQUESTS, REVIEWS_PER_PRODUCT, allocated / REQUESTS, micros / REQUESTS);
+    }
+}
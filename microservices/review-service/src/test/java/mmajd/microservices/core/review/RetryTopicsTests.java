@@ -0,0 +1,120 @@
+package mmajd.microservices.core.review;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import mmajd.api.core.review.Review;
+import mmajd.api.event.Event;
+import mmajd.microservices.core.review.persistence.ReviewStore;
+import mmajd.util.messaging.ReactiveEventProcessor;
+import mmajd.util.messaging.RetryTopics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"app.retry-topics.delays-ms=10,10,10"})
+@ActiveProfiles("retry_topics")
+@Import({TestChannelBinderConfiguration.class})
+class RetryTopicsTests extends MySqlTestBase {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Autowired private InputDestination input;
+
+  @Autowired private OutputDestination target;
+
+  @Autowired private ReviewStore store;
+
+  @Autowired private MeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setupDb() {
+    store.deleteAll().block();
+  }
+
+  @Test
+  void failedEventGoesThroughTheRetryTiersToTheDeadLetterQueue() {
+
+    input.send(toMessage(createEvent(1, 1)), "reviews");
+    assertEquals(1, (long) store.findByProductId(1).count().block());
+
+    // a second create of the same review fails on the duplicate key, in every tier
+    input.send(toMessage(createEvent(1, 1)), "reviews");
+
+    Message<byte[]> retry = receive("reviews.retry-1");
+    assertEquals("1", String.valueOf(retry.getHeaders().get(RetryTopics.RETRY_ATTEMPT_HEADER)));
+
+    for (int tier = 2; tier <= 3; tier++) {
+      input.send(retry, "reviews.retry-" + (tier - 1));
+      retry = receive("reviews.retry-" + tier);
+      assertEquals(String.valueOf(tier), String.valueOf(retry.getHeaders().get(RetryTopics.RETRY_ATTEMPT_HEADER)));
+    }
+
+    input.send(retry, "reviews.retry-3");
+    Message<byte[]> deadLetter = receive("DLX");
+    assertTrue(String.valueOf(deadLetter.getHeaders().get(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER)).contains("Duplicate key"));
+  }
+
+  @Test
+  void retriedCreateIsDroppedAfterALaterDeleteOfTheProduct() throws InterruptedException {
+
+    double supersededBefore = meterRegistry.counter("messaging.events.superseded").count();
+
+    Event<Integer, Review> create = createEvent(1, 1);
+    Thread.sleep(5);
+    input.send(toMessage(new Event<Integer, Review>(Event.Type.DELETE, 1, null)), "reviews");
+
+    // the create failed before the delete and is retried after it
+    input.send(MessageBuilder.fromMessage(toMessage(create))
+            .setHeader(RetryTopics.RETRY_ATTEMPT_HEADER, 1)
+            .setHeader(RetryTopics.RETRY_AT_HEADER, System.currentTimeMillis())
+            .build(), "reviews.retry-1");
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (meterRegistry.counter("messaging.events.superseded").count() == supersededBefore && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(1.0, meterRegistry.counter("messaging.events.superseded").count() - supersededBefore);
+    assertEquals(0, (long) store.findByProductId(1).count().block());
+  }
+
+  private Message<byte[]> receive(String destination) {
+    long deadline = System.currentTimeMillis() + 5000;
+    Message<byte[]> message = null;
+    while (message == null && System.currentTimeMillis() < deadline) {
+      try {
+        message = target.receive(100, destination);
+      } catch (NullPointerException npe) {
+        // no destination is created before the first message is sent to it
+      }
+    }
+    assertNotNull(message, "No message sent to " + destination);
+    return message;
+  }
+
+  private Message<byte[]> toMessage(Event<Integer, Review> event) {
+    try {
+      return MessageBuilder.withPayload(mapper.writeValueAsBytes(event)).build();
+    } catch (JsonProcessingException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private Event<Integer, Review> createEvent(int productId, int reviewId) {
+    Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
+    return new Event<>(Event.Type.CREATE, productId, review);
+  }
+}
@@ -1,182 +1,15 @@
 package mmajd.microservices.core.review;
 
-import mmajd.api.core.review.Review;
-import mmajd.api.event.Event;
-import mmajd.api.exceptions.InvalidInputException;
-import mmajd.microservices.core.review.persistence.ReviewRepository;
-import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Test;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.http.HttpStatus;
-import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
-import java.util.function.Consumer;
+/**
+ * The tests of AbstractReviewServiceTests with the reviews stored on JPA, in MySQL.
+ */
+class ReviewServiceApplicationTests extends AbstractReviewServiceTests {
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
-import static org.springframework.http.HttpStatus.*;
-import static org.springframework.http.MediaType.APPLICATION_JSON;
-import static reactor.core.publisher.Mono.just;
-
-
-@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
-        "spring.cloud.stream.defaultBinder=rabbit",
-        "logging.level.majd=DEBUG"
-})
-class ReviewServiceApplicationTests extends MySqlTestBase {
-
-  @Autowired
-  private WebTestClient client;
-
-  @Autowired
-  private ReviewRepository repository;
-
-  @Autowired
-  @Qualifier("messageProcessor")
-  private Consumer<Event<Integer, Review>> messageProcessor;
-
-  @BeforeEach
-  void setup() {
-    repository.deleteAll();
-  }
-
-  @Test
-  void getReviewsByProductId() {
-
-    int productId = 1;
-
-    assertEquals(0, repository.findByProductId(productId).size());
-
-    sendCreateReviewEvent(productId, 1);
-    sendCreateReviewEvent(productId, 2);
-    sendCreateReviewEvent(productId, 3);
-
-    assertEquals(3, repository.findByProductId(productId).size());
-
-    getAndVerifyReviewsByProductId(productId, OK)
-            .jsonPath("$.length()").isEqualTo(3)
-            .jsonPath("$[2].productId").isEqualTo(productId)
-            .jsonPath("$[2].reviewId").isEqualTo(3);
-  }
-
-  @Test
-  void duplicateError() {
-
-    int productId = 1;
-    int reviewId = 1;
-
-    assertEquals(0, repository.count());
-
-    sendCreateReviewEvent(productId, reviewId);
-
-    InvalidInputException thrown = assertThrows(
-            InvalidInputException.class,
-            () -> sendCreateReviewEvent(productId, reviewId),
-            "Expected an InvalidInputException"
-    );
-
-    assertEquals("Duplicate key, Product Id: 1, Review Id: 1", thrown.getMessage());
-
-    assertEquals(1, repository.count());
+  @DynamicPropertySource
+  static void mySqlProperties(DynamicPropertyRegistry registry) {
+    MySqlTestBase.databaseProperties(registry);
   }
-
-  @Test
-  void deleteReviews() {
-
-    int productId = 1;
-    int reviewId = 1;
-
-    sendCreateReviewEvent(productId, reviewId);
-    assertEquals(1, repository.findByProductId(productId).size());
-
-    sendDeleteReviewEvent(productId);
-    assertEquals(0, repository.findByProductId(productId).size());
-
-    sendDeleteReviewEvent(productId);
-  }
-
-  @Test
-  void getReviewsMissingParameter() {
-
-    getAndVerifyReviewsByProductId("", BAD_REQUEST)
-            .jsonPath("$.path").isEqualTo("/review")
-            .jsonPath("$.message").isEqualTo("Required int parameter 'productId' is not present");
-  }
-
-  @Test
-  void getReviewsInvalidParameter() {
-
-    getAndVerifyReviewsByProductId("?productId=no-integer", BAD_REQUEST)
-            .jsonPath("$.path").isEqualTo("/review")
-            .jsonPath("$.message").isEqualTo("Type mismatch.");
-  }
-
-  @Test
-  void getReviewsNotFound() {
-
-    getAndVerifyReviewsByProductId("?productId=213", OK)
-            .jsonPath("$.length()").isEqualTo(0);
-  }
-
-  @Test
-  void getReviewsInvalidParameterNegativeValue() {
-
-    int productIdInvalid = -1;
-
-    getAndVerifyReviewsByProductId("?productId=" + productIdInvalid, UNPROCESSABLE_ENTITY)
-            .jsonPath("$.path").isEqualTo("/review")
-            .jsonPath("$.message").isEqualTo("Invalid productId: " + productIdInvalid);
-  }
-
-  private WebTestClient.BodyContentSpec getAndVerifyReviewsByProductId(int productId, HttpStatus expectedStatus) {
-    return getAndVerifyReviewsByProductId("?productId=" + productId, expectedStatus);
-  }
-
-  private WebTestClient.BodyContentSpec getAndVerifyReviewsByProductId(String productIdQuery, HttpStatus expectedStatus) {
-    return client.get()
-            .uri("/review" + productIdQuery)
-            .accept(APPLICATION_JSON)
-            .exchange()
-            .expectStatus().isEqualTo(expectedStatus)
-            .expectHeader().contentType(APPLICATION_JSON)
-            .expectBody();
-  }
-
-  private WebTestClient.BodyContentSpec postAndVerifyReview(int productId, int reviewId, HttpStatus expectedStatus) {
-    Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
-    return client.post()
-            .uri("/review")
-            .body(just(review), Review.class)
-            .accept(APPLICATION_JSON)
-            .exchange()
-            .expectStatus().isEqualTo(expectedStatus)
-            .expectHeader().contentType(APPLICATION_JSON)
-            .expectBody();
-  }
-
-  private WebTestClient.BodyContentSpec deleteAndVerifyReviewsByProductId(int productId, HttpStatus expectedStatus) {
-    return client.delete()
-            .uri("/review?productId=" + productId)
-            .accept(APPLICATION_JSON)
-            .exchange()
-            .expectStatus().isEqualTo(expectedStatus)
-            .expectBody();
-  }
-
-
-  private void sendCreateReviewEvent (int productId, int reviewId) {
-    Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
-    Event<Integer, Review> event = new Event<>(Event.Type.CREATE, productId, review);
-    messageProcessor.accept(event);
-  }
-
-
-  private void sendDeleteReviewEvent(int productId) {
-    Event<Integer, Review> event = new Event<>(Event.Type.DELETE, productId, null);
-    messageProcessor.accept(event);
-  }
-
 }
@@ -0,0 +1,106 @@
+package mmajd.microservices.core.review;
+
+import mmajd.util.reactor.VirtualThreadScheduler;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
+
+/**
+ * JDBC calls per second of the jdbc-pool, a bounded elastic scheduler, against the virtual
+ * thread scheduler, both allowing as many concurrent calls as there are connections. A call is
+ * a query waiting on the MySQL container, read by the driver inside synchronized code, which
+ * pins the carrier of a virtual thread. The virtual thread case is skipped before Java 21.
+ * Excluded from the test task, run with the benchmark task.
+ */
+@Tag("benchmark")
+@JdbcTest
+@Transactional(propagation = NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class SchedulerBenchmark extends MySqlTestBase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchedulerBenchmark.class);
+
+    private static final int CALLS = 2000;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connections;
+
+    @Test
+    void boundedElasticWithDefaultQueue() {
+        run("boundedElastic, queue 100", Schedulers.newBoundedElastic(connections, 100, "bench-bounded"));
+    }
+
+    @Test
+    void boundedElasticWithLargeQueue() {
+        run("boundedElastic, queue " + CALLS, Schedulers.newBoundedElastic(connections, CALLS, "bench-bounded-large"));
+    }
+
+    @Test
+    void virtualThreads() {
+        assumeTrue(VirtualThreadScheduler.isSupported(), "Virtual threads require Java 21");
+        run("virtual threads", VirtualThreadScheduler.create("bench-virtual", connections));
+    }
+
+    private void run(String name, Scheduler scheduler) {
+        try {
+            // warms up the scheduler and the JIT
+            calls(scheduler, CALLS / 10, new AtomicInteger());
+
+            threads.resetPeakThreadCount();
+            AtomicInteger rejected = new AtomicInteger();
+            long start = System.nanoTime();
+            long completed = calls(scheduler, CALLS, rejected);
+            double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+
+            LOG.info("{}: {} calls in {} ms, {} calls/s, {} rejected, peak of {} platform threads, {} cores",
+                    name, completed, Math.round(seconds * 1000), Math.round(completed / seconds),
+                    rejected.get(), threads.getPeakThreadCount(), Runtime.getRuntime().availableProcessors());
+            assertEquals(CALLS, completed + rejected.get());
+        } finally {
+            scheduler.dispose();
+        }
+    }
+
+    // all calls are submitted at once, as a burst of requests would
+    private long calls(Scheduler scheduler, int calls, AtomicInteger rejected) {
+        return Flux.range(1, calls)
+                .flatMap(i -> Mono.fromCallable(this::jdbcCall)
+                        .subscribeOn(scheduler)
+                        .onErrorResume(RejectedExecutionException.class, ex -> {
+                            rejected.incrementAndGet();
+                            return Mono.empty();
+                        }), calls)
+                .count()
+                .block();
+    }
+
+    // a query of 5 ms on the database, the connection is taken from and returned to Hikari
+    private Integer jdbcCall() {
+        return jdbcTemplate.queryForObject("SELECT SLEEP(0.005)", Integer.class);
+    }
+}
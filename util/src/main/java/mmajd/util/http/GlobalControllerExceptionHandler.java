@@ -3,6 +3,7 @@ package mmajd.util.http;
 import mmajd.api.exceptions.BadRequestException;
 import mmajd.api.exceptions.InvalidInputException;
 import mmajd.api.exceptions.NotFoundException;
+import mmajd.api.exceptions.ServiceUnavailableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
@@ -43,6 +44,14 @@ class GlobalControllerExceptionHandler {
     return createHttpErrorInfo(UNPROCESSABLE_ENTITY, request, ex);
   }
 
+  @ResponseStatus(SERVICE_UNAVAILABLE)
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public @ResponseBody HttpErrorInfo handleServiceUnavailableException(
+    ServerHttpRequest request, ServiceUnavailableException ex) {
+
+    return createHttpErrorInfo(SERVICE_UNAVAILABLE, request, ex);
+  }
+
   private HttpErrorInfo createHttpErrorInfo(
     HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
 
@@ -0,0 +1,118 @@
+package mmajd.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Processes event messages in batches of up to max-size messages, or whatever arrived within
+ * max-wait. A batch is cut into runs of consecutive events of the same kind, for example creates
+ * and deletes, and each run is handed to the bulk handler as one list, runs are processed in
+ * order so the order of events per key holds.
+ * The bulk handler answers the positions of the events it could not process, those, or all events
+ * of the run if the bulk handler fails, are processed one by one with retries and dead lettering,
+ * so one bad event does not fail the rest of its batch.
+ * The messages of a run are acked once the bulk handler processed them, failed ones once they are
+ * processed one by one or handed on.
+ */
+public class BatchEventProcessor<E> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchEventProcessor.class);
+
+  private final int maxSize;
+  private final Duration maxWait;
+  private final Function<E, Object> runOf;
+  private final Function<List<E>, Mono<Set<Integer>>> bulkHandler;
+  private final ReactiveEventProcessor<E> singleEvents;
+  private final MessageAcks acks;
+
+  /**
+   * @param runOf kind of an event, consecutive events of the same kind are processed in bulk
+   * @param bulkHandler processes a run, answers the positions of the events that failed in the run
+   * @param singleEvents processes the failed events one by one
+   */
+  public BatchEventProcessor(
+          int maxSize,
+          Duration maxWait,
+          Function<E, Object> runOf,
+          Function<List<E>, Mono<Set<Integer>>> bulkHandler,
+          ReactiveEventProcessor<E> singleEvents,
+          MessageAcks acks) {
+
+    LOG.info("Creates a batch event processor with max size = {} and max wait = {} ms", maxSize, maxWait.toMillis());
+
+    this.maxSize = maxSize;
+    this.maxWait = maxWait;
+    this.runOf = runOf;
+    this.bulkHandler = bulkHandler;
+    this.singleEvents = singleEvents;
+    this.acks = acks;
+  }
+
+  public Mono<Void> process(Flux<Message<E>> messages) {
+    return messages
+            .bufferTimeout(maxSize, maxWait)
+            .concatMap(batch -> Flux.fromIterable(runs(batch)).concatMap(this::processRun))
+            .then();
+  }
+
+  private Mono<Void> processRun(List<Message<E>> run) {
+    List<E> events = new ArrayList<>(run.size());
+    run.forEach(message -> events.add(message.getPayload()));
+
+    LOG.debug("Processes a run of {} events in bulk", events.size());
+
+    return Mono.defer(() -> bulkHandler.apply(events))
+            .defaultIfEmpty(Collections.emptySet())
+            .onErrorResume(ex -> {
+              LOG.warn("Bulk processing of {} events failed, processes them one by one: {}", events.size(), ex.toString());
+              Set<Integer> all = new HashSet<>();
+              for (int i = 0; i < events.size(); i++) {
+                all.add(i);
+              }
+              return Mono.just(all);
+            })
+            .flatMap(failed -> {
+              List<Message<E>> isolated = new ArrayList<>(failed.size());
+              for (int i = 0; i < run.size(); i++) {
+                if (failed.contains(i)) {
+                  isolated.add(run.get(i));
+                } else {
+                  acks.ack(run.get(i));
+                }
+              }
+              if (isolated.isEmpty()) {
+                return Mono.empty();
+              }
+              LOG.debug("Processes {} of {} events of the run one by one", isolated.size(), events.size());
+              return Flux.fromIterable(isolated).concatMap(singleEvents::processMessage).then();
+            });
+  }
+
+  private List<List<Message<E>>> runs(List<Message<E>> batch) {
+    List<List<Message<E>>> runs = new ArrayList<>();
+    List<Message<E>> run = null;
+    Object kind = null;
+    for (Message<E> message : batch) {
+      Object messageKind = runOf.apply(message.getPayload());
+      if (run == null || !Objects.equals(kind, messageKind)) {
+        run = new ArrayList<>();
+        runs.add(run);
+        kind = messageKind;
+      }
+      run.add(message);
+    }
+    return runs;
+  }
+}
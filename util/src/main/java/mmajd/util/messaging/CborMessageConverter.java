@@ -0,0 +1,110 @@
+package mmajd.util.messaging;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageConversionException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Converts message payloads to and from CBOR, for bindings with content type application/cbor.
+ * Payloads larger than the compression threshold are gzipped, compressed payloads are recognized
+ * by the gzip magic bytes, which never start a CBOR encoded object.
+ * The content type travels in the message header, so a consumer with this converter reads
+ * both JSON and CBOR events while the producers are switched over.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CborMessageConverter.class);
+
+  public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+
+  private static final int GZIP_MAGIC_FIRST = 0x1f;
+  private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+  private final ObjectMapper mapper;
+  private final int compressionThreshold;
+
+  /**
+   * @param compressionThreshold payload size in bytes above which payloads are gzipped, 0 or less disables compression
+   */
+  public CborMessageConverter(ObjectMapper cborMapper, int compressionThreshold) {
+    super(APPLICATION_CBOR);
+    this.mapper = cborMapper;
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return true;
+  }
+
+  @Override
+  protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+    Object payload = message.getPayload();
+    if (!(payload instanceof byte[])) {
+      return null;
+    }
+
+    byte[] bytes = (byte[]) payload;
+    JavaType type = mapper.constructType(resolveType(targetClass, conversionHint));
+    try (InputStream in = isCompressed(bytes)
+            ? new GZIPInputStream(new ByteArrayInputStream(bytes))
+            : new ByteArrayInputStream(bytes)) {
+      return mapper.readValue(in, type);
+    } catch (IOException ex) {
+      throw new MessageConversionException(message, "Could not read CBOR payload: " + ex.getMessage(), ex);
+    }
+  }
+
+  @Override
+  protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+    if (payload instanceof byte[]) {
+      return payload;
+    }
+
+    try {
+      byte[] bytes = mapper.writeValueAsBytes(payload);
+      if (compressionThreshold <= 0 || bytes.length <= compressionThreshold) {
+        return bytes;
+      }
+
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+      try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+        out.write(bytes);
+      }
+      LOG.trace("Compressed CBOR payload from {} to {} bytes", bytes.length, compressed.size());
+      return compressed.toByteArray();
+
+    } catch (IOException ex) {
+      throw new MessageConversionException("Could not write CBOR payload: " + ex.getMessage(), ex);
+    }
+  }
+
+  private Type resolveType(Class<?> targetClass, Object conversionHint) {
+    if (conversionHint instanceof MethodParameter) {
+      return ((MethodParameter) conversionHint).getGenericParameterType();
+    }
+    if (conversionHint instanceof Type) {
+      return (Type) conversionHint;
+    }
+    return targetClass;
+  }
+
+  private static boolean isCompressed(byte[] bytes) {
+    return bytes.length > 2 && (bytes[0] & 0xff) == GZIP_MAGIC_FIRST && (bytes[1] & 0xff) == GZIP_MAGIC_SECOND;
+  }
+}
@@ -0,0 +1,81 @@
+package mmajd.util.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Replay of the dead letter queue of a core service, see {@link DlqReplayer}. The service binds
+ * dlqReplayProcessor-in-0 to its dead letter queue with autoStartup false, and dlqReplay-out-0 to
+ * its main destination.
+ */
+@Configuration
+@ConditionalOnProperty("app.dlq-replay.enabled")
+public class DlqReplayConfig {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DlqReplayConfig.class);
+
+  static final String DLQ_BINDING = "dlqReplayProcessor-in-0";
+
+  @Bean
+  public DlqReplayer dlqReplayer(
+          StreamBridge streamBridge,
+          BindingsLifecycleController bindings,
+          ObjectMapper mapper,
+          @Qualifier("cborMessageConverter") MessageConverter cborMessageConverter,
+          @Value("${app.dlq-replay.burst:10}") int burst) {
+
+    LOG.info("Creates a dead letter queue replayer with burst = {}", burst);
+
+    MappingJackson2MessageConverter jsonMessageConverter = new MappingJackson2MessageConverter();
+    jsonMessageConverter.setObjectMapper(mapper);
+    CompositeMessageConverter converter = new CompositeMessageConverter(Arrays.asList(cborMessageConverter, jsonMessageConverter));
+
+    return new DlqReplayer(
+            message -> {
+              JsonNode event = (JsonNode) converter.fromMessage(message, JsonNode.class);
+              if (event == null) {
+                throw new IllegalArgumentException("Unsupported content type of parked message: " + message.getHeaders().get("contentType"));
+              }
+              return event;
+            },
+            (binding, message) -> {
+              if (!streamBridge.send(binding, message)) {
+                throw new IllegalStateException("Failed to send message to " + binding);
+              }
+            },
+            start -> bindings.changeState(DLQ_BINDING,
+                    start ? BindingsLifecycleController.State.STARTED : BindingsLifecycleController.State.STOPPED),
+            burst);
+  }
+
+  @Bean
+  public Function<Flux<Message<byte[]>>, Mono<Void>> dlqReplayProcessor(DlqReplayer replayer) {
+    return replayer::replay;
+  }
+
+  @Bean
+  public DlqReplayEndpoint dlqReplayEndpoint(
+          DlqReplayer replayer,
+          @Value("${app.dlq-replay.rate-per-second:50}") double defaultRatePerSecond) {
+
+    return new DlqReplayEndpoint(replayer, defaultRatePerSecond);
+  }
+}
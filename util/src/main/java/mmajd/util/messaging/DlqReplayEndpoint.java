@@ -0,0 +1,53 @@
+package mmajd.util.messaging;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+/**
+ * Actuator endpoint of the {@link DlqReplayer}: GET reports the progress of the last replay,
+ * POST starts one, for example with {"eventTypes": "CREATE", "minKey": 1, "maxKey": 100, "ratePerSecond": 20},
+ * and DELETE stops it.
+ */
+@Endpoint(id = "dlqreplay")
+public class DlqReplayEndpoint {
+
+  private final DlqReplayer replayer;
+  private final double defaultRatePerSecond;
+
+  public DlqReplayEndpoint(DlqReplayer replayer, double defaultRatePerSecond) {
+    this.replayer = replayer;
+    this.defaultRatePerSecond = defaultRatePerSecond;
+  }
+
+  @ReadOperation
+  public DlqReplayer.Progress progress() {
+    return replayer.progress();
+  }
+
+  @WriteOperation
+  public DlqReplayer.Progress start(
+          @Nullable String eventTypes,
+          @Nullable Integer minKey,
+          @Nullable Integer maxKey,
+          @Nullable Double ratePerSecond) {
+
+    double rate = (ratePerSecond == null) ? defaultRatePerSecond : ratePerSecond;
+    if (rate <= 0) {
+      throw new InvalidEndpointRequestException("Rate must be positive: " + rate, "Rate must be positive");
+    }
+    try {
+      return replayer.start(DlqReplayer.Filter.of(eventTypes, minKey, maxKey), rate);
+    } catch (IllegalStateException ex) {
+      throw new InvalidEndpointRequestException(ex.getMessage(), ex.getMessage());
+    }
+  }
+
+  @DeleteOperation
+  public DlqReplayer.Progress stop() {
+    return replayer.stop();
+  }
+}
@@ -0,0 +1,300 @@
+package mmajd.util.messaging;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Replays the dead letter queue of a consumer to its main destination. The binding on the
+ * dead letter queue is stopped until a replay is started. A run first appends a marker message
+ * to the dead letter queue and ends when the marker comes back, so every message parked before
+ * the start is seen once, even those that fail again and are parked behind the marker.
+ * Matching messages are sent to the dlqReplay-out-0 binding at the rate of a token bucket,
+ * the others are parked again.
+ *
+ * Bind the dead letter queue with manual acknowledgement. A message is only acknowledged once
+ * it is replayed or parked again, so messages waiting for the token bucket are delivered again
+ * if the service stops during a replay. On RabbitMQ, prefetch bounds the messages waiting.
+ * On Kafka, a message parked again is appended to the dead letter topic, while the original
+ * stays in the log until its retention ends, so every run that skips a message adds a copy of it.
+ */
+public class DlqReplayer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DlqReplayer.class);
+
+  public static final String REPLAY_MARKER_HEADER = "x-replay-marker";
+
+  static final String REPLAY_BINDING = "dlqReplay-out-0";
+  static final String DEAD_LETTERS_BINDING = "deadLetters-out-0";
+
+  // headers of the broker, of the failure and of the retries, not carried over to a replayed message
+  private static final List<String> DROPPED_HEADER_PREFIXES = Arrays.asList(
+          "amqp_", "kafka_", "scst_", "x-exception", "x-original", "x-death", "x-first-death");
+  private static final Set<String> DROPPED_HEADERS = new HashSet<>(Arrays.asList(
+          MessageHeaders.ID, MessageHeaders.TIMESTAMP, "deliveryAttempt", "sourceData",
+          RetryTopics.RETRY_ATTEMPT_HEADER, RetryTopics.RETRY_AT_HEADER));
+
+  public enum State {
+    IDLE,
+    RUNNING,
+    COMPLETED,
+    STOPPED
+  }
+
+  private final Function<Message<byte[]>, JsonNode> reader;
+  private final BiConsumer<String, Message<?>> sender;
+  private final Consumer<Boolean> binding;
+  private final int burst;
+
+  private final MessageAcks acks = new MessageAcks();
+
+  private volatile Run run;
+
+  /**
+   * @param reader reads the event of a message, whatever its content type
+   * @param sender sends a message to an output binding, throws if it could not be sent
+   * @param binding starts, with true, or stops the binding on the dead letter queue
+   * @param burst messages that may be replayed at once after a pause
+   */
+  public DlqReplayer(
+          Function<Message<byte[]>, JsonNode> reader,
+          BiConsumer<String, Message<?>> sender,
+          Consumer<Boolean> binding,
+          int burst) {
+
+    this.reader = reader;
+    this.sender = sender;
+    this.binding = binding;
+    this.burst = burst;
+  }
+
+  public synchronized Progress start(Filter filter, double ratePerSecond) {
+    if (isRunning()) {
+      throw new IllegalStateException("Replay " + run.id + " is already running");
+    }
+
+    Run next = new Run(UUID.randomUUID().toString(), filter, ratePerSecond, new TokenBucket(ratePerSecond, burst));
+    LOG.info("Starts replay {} of the dead letter queue, filter = {}, rate = {}/s", next.id, filter, ratePerSecond);
+
+    sender.accept(DEAD_LETTERS_BINDING, MessageBuilder.withPayload(new byte[0])
+            .setHeader(REPLAY_MARKER_HEADER, next.id)
+            .build());
+    run = next;
+    binding.accept(true);
+    return next.progress();
+  }
+
+  public synchronized Progress stop() {
+    Run current = run;
+    if (current == null) {
+      return progress();
+    }
+    finish(current, State.STOPPED);
+    return current.progress();
+  }
+
+  public Progress progress() {
+    Run current = run;
+    return (current == null)
+            ? new Progress(null, State.IDLE, null, 0, 0, 0, 0, null, null)
+            : current.progress();
+  }
+
+  public boolean isRunning() {
+    Run current = run;
+    return current != null && current.state == State.RUNNING;
+  }
+
+  /**
+   * Processes the messages of the dead letter queue binding.
+   */
+  public Mono<Void> replay(Flux<Message<byte[]>> messages) {
+    return acks.track(messages)
+            .concatMap(message -> replayMessage(message)
+                    .doOnSuccess(done -> acks.ack(message))
+                    // an error would end the stream and with it the binding, the message is delivered again instead
+                    .onErrorResume(ex -> {
+                      LOG.error("Failed to replay or park message, message is delivered again: {}", message, ex);
+                      acks.requeue(message);
+                      return Mono.empty();
+                    }))
+            .then();
+  }
+
+  private Mono<Void> replayMessage(Message<byte[]> message) {
+    Run current = run;
+
+    Object marker = message.getHeaders().get(REPLAY_MARKER_HEADER);
+    if (marker != null) {
+      // markers of earlier runs are dropped
+      if (current != null && current.id.equals(String.valueOf(marker))) {
+        LOG.info("Replay {} reached its marker, all parked messages are seen", current.id);
+        finish(current, State.COMPLETED);
+      }
+      return Mono.empty();
+    }
+
+    // delivered while the binding was stopping
+    if (current == null || current.state != State.RUNNING) {
+      return Mono.fromRunnable(() -> park(message));
+    }
+
+    JsonNode event;
+    try {
+      event = reader.apply(message);
+    } catch (RuntimeException ex) {
+      LOG.warn("Failed to read parked message, parks it again: {}", ex.toString());
+      current.failed.incrementAndGet();
+      return Mono.fromRunnable(() -> park(message));
+    }
+
+    if (!current.filter.matches(event)) {
+      current.skipped.incrementAndGet();
+      return Mono.fromRunnable(() -> park(message));
+    }
+
+    Duration wait = current.bucket.reserve();
+    Mono<Void> permit = wait.isZero() ? Mono.empty() : Mono.delay(wait).then();
+    return permit
+            .then(Mono.fromRunnable(() -> {
+              sender.accept(REPLAY_BINDING, replayMessageOf(message, event));
+              current.replayed.incrementAndGet();
+            }))
+            .onErrorResume(ex -> {
+              LOG.warn("Failed to replay message, parks it again: {}", ex.toString());
+              current.failed.incrementAndGet();
+              return Mono.fromRunnable(() -> park(message));
+            })
+            .then();
+  }
+
+  private void park(Message<byte[]> message) {
+    sender.accept(DEAD_LETTERS_BINDING, MessageBuilder.fromMessage(message).removeHeaders(MessageAcks.ACK_HEADERS).build());
+  }
+
+  private synchronized void finish(Run current, State state) {
+    if (current.state != State.RUNNING) {
+      return;
+    }
+    current.state = state;
+    current.finishedAt = ZonedDateTime.now();
+    // not on the thread of the binding, a listener container does not stop itself,
+    // and not if a new replay was started in the meantime
+    Schedulers.boundedElastic().schedule(() -> {
+      synchronized (this) {
+        if (!isRunning()) {
+          binding.accept(false);
+        }
+      }
+    });
+    LOG.info("Replay {} {}, replayed = {}, skipped = {}, failed = {}",
+            current.id, state, current.replayed.get(), current.skipped.get(), current.failed.get());
+  }
+
+  private Message<byte[]> replayMessageOf(Message<byte[]> message, JsonNode event) {
+    MessageBuilder<byte[]> builder = MessageBuilder.withPayload(message.getPayload());
+    message.getHeaders().forEach((name, value) -> {
+      if (!DROPPED_HEADERS.contains(name) && DROPPED_HEADER_PREFIXES.stream().noneMatch(name::startsWith)) {
+        builder.setHeader(name, value);
+      }
+    });
+    if (event.hasNonNull("key")) {
+      builder.setHeader("partitionKey", event.get("key").asInt());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Event types, empty for all, and an inclusive range of keys, null for unbounded.
+   */
+  @Data
+  @AllArgsConstructor
+  public static class Filter {
+    private final Set<String> eventTypes;
+    private final Integer minKey;
+    private final Integer maxKey;
+
+    public static Filter of(String eventTypes, Integer minKey, Integer maxKey) {
+      Set<String> types = (eventTypes == null || eventTypes.trim().isEmpty())
+              ? Collections.emptySet()
+              : new HashSet<>(Arrays.asList(eventTypes.trim().toUpperCase().split("\\s*,\\s*")));
+      return new Filter(types, minKey, maxKey);
+    }
+
+    boolean matches(JsonNode event) {
+      if (!eventTypes.isEmpty() && !eventTypes.contains(event.path("eventType").asText())) {
+        return false;
+      }
+      if (minKey == null && maxKey == null) {
+        return true;
+      }
+      if (!event.path("key").canConvertToInt()) {
+        return false;
+      }
+      int key = event.path("key").asInt();
+      return (minKey == null || key >= minKey) && (maxKey == null || key <= maxKey);
+    }
+  }
+
+  @Data
+  @AllArgsConstructor
+  public static class Progress {
+    private final String replayId;
+    private final State state;
+    private final Filter filter;
+    private final double ratePerSecond;
+    private final long replayed;
+    private final long skipped;
+    private final long failed;
+    private final ZonedDateTime startedAt;
+    private final ZonedDateTime finishedAt;
+  }
+
+  private static class Run {
+    private final String id;
+    private final Filter filter;
+    private final double ratePerSecond;
+    private final TokenBucket bucket;
+    private final ZonedDateTime startedAt = ZonedDateTime.now();
+
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile State state = State.RUNNING;
+    private volatile ZonedDateTime finishedAt;
+
+    Run(String id, Filter filter, double ratePerSecond, TokenBucket bucket) {
+      this.id = id;
+      this.filter = filter;
+      this.ratePerSecond = ratePerSecond;
+      this.bucket = bucket;
+    }
+
+    Progress progress() {
+      return new Progress(id, state, filter, ratePerSecond,
+              replayed.get(), skipped.get(), failed.get(), startedAt, finishedAt);
+    }
+  }
+}
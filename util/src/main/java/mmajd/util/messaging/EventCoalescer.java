@@ -0,0 +1,184 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import mmajd.api.event.Event;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static mmajd.api.event.Event.Type.DELETE;
+
+/**
+ * Holds the events of a key for a short window and drops those superseded within it: a DELETE
+ * removes everything of the key, so all events before the last DELETE of the window are dropped,
+ * for example CREATE followed by DELETE is passed on as the DELETE alone.
+ * The events of a key are passed on in order once the window, started by its first event, ends.
+ * When more than max-pending-keys keys are held, the oldest key is passed on right away.
+ *
+ * Events held in a window are already taken from the broker, with manual acknowledgement they are
+ * only acked once processed, dropped events once superseded, and are redelivered if the consumer
+ * stops before. Keep the window short, held events are not acked until it ends.
+ */
+public class EventCoalescer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventCoalescer.class);
+
+  private final Duration window;
+  private final int maxPendingKeys;
+  private final Scheduler scheduler;
+  private final Counter coalesced;
+
+  /**
+   * @param window how long the events of a key are held, zero disables coalescing
+   */
+  public EventCoalescer(Duration window, int maxPendingKeys, MeterRegistry registry) {
+    LOG.info("Creates an event coalescer with window = {} ms and max pending keys = {}", window.toMillis(), maxPendingKeys);
+
+    this.window = window;
+    this.maxPendingKeys = maxPendingKeys;
+    this.scheduler = Schedulers.parallel();
+    this.coalesced = Counter.builder("messaging.events.coalesced")
+            .description("Events dropped because a later event of the same key superseded them")
+            .register(registry);
+  }
+
+  /**
+   * Events are requested from upstream as they are requested downstream, plus one for each dropped
+   * event, so the events held in windows, and emitted but not yet consumed, are bounded by the
+   * demand of the downstream subscriber and the binder's backpressure holds.
+   *
+   * @param superseded called with each dropped message, to ack it
+   */
+  public <E extends Event<?, ?>> Flux<Message<E>> coalesce(Flux<Message<E>> messages, Consumer<Message<E>> superseded) {
+    if (window.isZero()) {
+      return messages;
+    }
+
+    return Flux.create(sink -> {
+      Pending<E> pending = new Pending<>(sink, superseded);
+      messages.subscribe(pending);
+      sink.onRequest(pending::request);
+      sink.onDispose(pending);
+    });
+  }
+
+  /**
+   * @return the events from the last DELETE on
+   */
+  static <E extends Event<?, ?>> List<Message<E>> collapse(List<Message<E>> messages) {
+    for (int i = messages.size() - 1; i > 0; i--) {
+      if (messages.get(i).getPayload().getEventType() == DELETE) {
+        return messages.subList(i, messages.size());
+      }
+    }
+    return messages;
+  }
+
+  private class Pending<E extends Event<?, ?>> extends BaseSubscriber<Message<E>> {
+    private final FluxSink<Message<E>> sink;
+    private final Consumer<Message<E>> superseded;
+    // in order of the first event of each key, the oldest key is flushed first when full
+    private final Map<Object, List<Message<E>>> byKey = new LinkedHashMap<>();
+
+    Pending(FluxSink<Message<E>> sink, Consumer<Message<E>> superseded) {
+      this.sink = sink;
+      this.superseded = superseded;
+    }
+
+    @Override
+    protected void hookOnSubscribe(Subscription subscription) {
+      // nothing is requested before the downstream subscriber requests
+    }
+
+    @Override
+    protected void hookOnNext(Message<E> message) {
+      int dropped;
+      synchronized (this) {
+        Object key = message.getPayload().getKey();
+        List<Message<E>> events = byKey.get(key);
+        dropped = 0;
+        if (events == null) {
+          if (byKey.size() >= maxPendingKeys) {
+            dropped = flush(byKey.keySet().iterator().next());
+          }
+          events = new ArrayList<>();
+          byKey.put(key, events);
+          // the window ends for this list only, a later list of the same key has its own window
+          List<Message<E>> windowEvents = events;
+          scheduler.schedule(() -> flushIfCurrent(key, windowEvents), window.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        events.add(message);
+      }
+      replenish(dropped);
+    }
+
+    @Override
+    protected void hookOnComplete() {
+      synchronized (this) {
+        new ArrayList<>(byKey.keySet()).forEach(this::flush);
+        sink.complete();
+      }
+    }
+
+    @Override
+    protected void hookOnError(Throwable ex) {
+      synchronized (this) {
+        new ArrayList<>(byKey.keySet()).forEach(this::flush);
+        sink.error(ex);
+      }
+    }
+
+    private void flushIfCurrent(Object key, List<Message<E>> windowEvents) {
+      int dropped = 0;
+      synchronized (this) {
+        if (byKey.get(key) == windowEvents) {
+          dropped = flush(key);
+        }
+      }
+      replenish(dropped);
+    }
+
+    // dropped events took demand without being emitted, they are requested again
+    private void replenish(int dropped) {
+      if (dropped > 0 && !isDisposed()) {
+        request(dropped);
+      }
+    }
+
+    /**
+     * Emitted while holding the lock, so the events of a key leave in order.
+     * @return number of events dropped
+     */
+    private int flush(Object key) {
+      List<Message<E>> events = byKey.remove(key);
+      if (events == null) {
+        // flushed already, by an event requested while emitting
+        return 0;
+      }
+      List<Message<E>> remaining = collapse(events);
+      int dropped = events.size() - remaining.size();
+      if (dropped > 0) {
+        LOG.debug("Coalesced {} events of key {} to {}", events.size(), key, remaining.size());
+        coalesced.increment(dropped);
+        events.subList(0, dropped).forEach(superseded);
+      }
+      remaining.forEach(sink::next);
+      return dropped;
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import mmajd.api.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import static mmajd.api.event.Event.Type.DELETE;
+
+/**
+ * Drops redelivered events before they reach the storage. The ids of processed events are kept
+ * in an LRU of bounded size, and in a Bloom filter in front of it. Most events are new, the Bloom
+ * filter answers those without a lock, only ids it might contain are looked up in the LRU, under
+ * its lock. An event counts as a duplicate only if its id is in the LRU, so a false positive of
+ * the Bloom filter, or an id evicted from the LRU, lets the event through to the storage, where
+ * it fails as before.
+ * The Bloom filter is replaced by a new one once it holds bloom-capacity ids and the previous one
+ * is still consulted, so it covers at least the last bloom-capacity ids, lru-size must not be larger.
+ * An event is only remembered once it is processed, a failed event is retried normally.
+ * Version 1 events have no id and are never dropped.
+ *
+ * It also keeps, per key, the timestamp of the newest event applied and of the newest DELETE
+ * applied, for the last lru-size keys, so a retried event processed after later events of its key
+ * can be recognized as superseded, see {@link #isSuperseded}. As the ids, these are per instance.
+ */
+public class EventDeduplicator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventDeduplicator.class);
+
+  private final int lruSize;
+  private final int bloomCapacity;
+  private final double bloomFalsePositiveRate;
+  private final Counter duplicates;
+  private final Counter superseded;
+
+  private final Map<UUID, Boolean> processed;
+  // per key the timestamps of the newest event and of the newest DELETE applied
+  private final Map<Object, long[]> watermarks;
+  // replaced under the lock of the LRU, read without it
+  private volatile BloomFilter current;
+  private volatile BloomFilter previous;
+
+  public EventDeduplicator(int lruSize, int bloomCapacity, double bloomFalsePositiveRate, MeterRegistry registry) {
+    if (lruSize > bloomCapacity) {
+      // ids rotated out of both Bloom filters would be missed while the LRU still holds them
+      throw new IllegalArgumentException(String.format(
+              "LRU size %d of the event deduplicator is larger than its Bloom filter capacity %d", lruSize, bloomCapacity));
+    }
+
+    LOG.info("Creates an event deduplicator with LRU size = {} and Bloom filter capacity = {}", lruSize, bloomCapacity);
+
+    this.lruSize = lruSize;
+    this.bloomCapacity = bloomCapacity;
+    this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+    this.duplicates = Counter.builder("messaging.events.duplicates")
+            .description("Redelivered events dropped before processing")
+            .register(registry);
+    this.superseded = Counter.builder("messaging.events.superseded")
+            .description("Retried events dropped because a later event of the same key was already applied")
+            .register(registry);
+
+    this.processed = new LinkedHashMap<UUID, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+        return size() > EventDeduplicator.this.lruSize;
+      }
+    };
+    this.watermarks = new LinkedHashMap<Object, long[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, long[]> eldest) {
+        return size() > EventDeduplicator.this.lruSize;
+      }
+    };
+    this.current = new BloomFilter(bloomCapacity, bloomFalsePositiveRate);
+    this.previous = current;
+  }
+
+  /**
+   * Processes the event with the handler, unless it is already processed.
+   */
+  public <E extends Event<?, ?>> Mono<Void> process(E event, Function<E, Mono<Void>> handler) {
+    if (isDuplicate(event)) {
+      LOG.debug("Drops duplicate event {} of type {} for key {}", event.getEventId(), event.getEventType(), event.getKey());
+      return Mono.empty();
+    }
+    return handler.apply(event).doOnSuccess(v -> markProcessed(event));
+  }
+
+  /**
+   * Processes the events that are not already processed with the bulk handler, that answers the
+   * positions of the events it could not process, see BatchEventProcessor.
+   */
+  public <E extends Event<?, ?>> Mono<Set<Integer>> processAll(List<E> events, Function<List<E>, Mono<Set<Integer>>> bulkHandler) {
+    List<E> fresh = new ArrayList<>(events.size());
+    List<Integer> positions = new ArrayList<>(events.size());
+    for (int i = 0; i < events.size(); i++) {
+      E event = events.get(i);
+      if (isDuplicate(event)) {
+        LOG.debug("Drops duplicate event {} of type {} for key {}", event.getEventId(), event.getEventType(), event.getKey());
+        continue;
+      }
+      fresh.add(event);
+      positions.add(i);
+    }
+
+    if (fresh.isEmpty()) {
+      return Mono.just(new HashSet<>());
+    }
+
+    return bulkHandler.apply(fresh).map(failed -> {
+      Set<Integer> failedPositions = new HashSet<>();
+      for (int i = 0; i < fresh.size(); i++) {
+        if (failed.contains(i)) {
+          failedPositions.add(positions.get(i));
+        } else {
+          markProcessed(fresh.get(i));
+        }
+      }
+      return failedPositions;
+    });
+  }
+
+  public boolean isDuplicate(Event<?, ?> event) {
+    UUID id = idOf(event);
+    if (id == null) {
+      return false;
+    }
+
+    if (!current.mightContain(id) && !previous.mightContain(id)) {
+      return false;
+    }
+    synchronized (this) {
+      if (processed.get(id) == null) {
+        return false;
+      }
+    }
+    duplicates.increment();
+    return true;
+  }
+
+  /**
+   * A retried event is superseded if a later event of its key is already applied: a CREATE by a
+   * later DELETE, that removed what it would create, a DELETE by any later event, that it would
+   * undo. Version 1 events have no timestamp and are never superseded.
+   */
+  public boolean isSuperseded(Event<?, ?> event) {
+    if (idOf(event) == null || event.getKey() == null) {
+      return false;
+    }
+
+    long newer;
+    synchronized (this) {
+      long[] watermark = watermarks.get(event.getKey());
+      if (watermark == null) {
+        return false;
+      }
+      newer = (event.getEventType() == DELETE) ? watermark[0] : watermark[1];
+    }
+    if (newer <= event.getTimestamp()) {
+      return false;
+    }
+    superseded.increment();
+    return true;
+  }
+
+  public void markProcessed(Event<?, ?> event) {
+    UUID id = idOf(event);
+    if (id == null) {
+      return;
+    }
+
+    synchronized (this) {
+      if (event.getKey() != null) {
+        long[] watermark = watermarks.computeIfAbsent(event.getKey(), key -> new long[2]);
+        watermark[0] = Math.max(watermark[0], event.getTimestamp());
+        if (event.getEventType() == DELETE) {
+          watermark[1] = Math.max(watermark[1], event.getTimestamp());
+        }
+      }
+      // in the Bloom filter before the LRU, a reader that finds it in the LRU also passed the Bloom filter
+      if (current.getCount() >= bloomCapacity) {
+        previous = current;
+        current = new BloomFilter(bloomCapacity, bloomFalsePositiveRate);
+      }
+      current.put(id);
+      processed.put(id, Boolean.TRUE);
+    }
+  }
+
+  private UUID idOf(Event<?, ?> event) {
+    String eventId = event.getEventId();
+    if (eventId == null) {
+      return null;
+    }
+    try {
+      return UUID.fromString(eventId);
+    } catch (IllegalArgumentException ex) {
+      return UUID.nameUUIDFromBytes(eventId.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  // bits are set with compare-and-set, so lookups need no lock, puts are serialized by the caller
+  private static class BloomFilter {
+    private final AtomicLongArray bits;
+    private final int numBits;
+    private final int numHashes;
+    private int count = 0;
+
+    BloomFilter(int capacity, double falsePositiveRate) {
+      long optimalBits = (long) (-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+      this.numBits = (int) Math.max(64, Math.min(optimalBits, Integer.MAX_VALUE - 63));
+      this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+      this.bits = new AtomicLongArray((numBits + 63) / 64);
+    }
+
+    void put(UUID id) {
+      long h1 = mix(id.getMostSignificantBits());
+      long h2 = mix(id.getLeastSignificantBits());
+      for (int i = 0; i < numHashes; i++) {
+        int bit = (int) Long.remainderUnsigned(h1 + i * h2, numBits);
+        long mask = 1L << bit;
+        bits.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m);
+      }
+      count++;
+    }
+
+    boolean mightContain(UUID id) {
+      long h1 = mix(id.getMostSignificantBits());
+      long h2 = mix(id.getLeastSignificantBits());
+      for (int i = 0; i < numHashes; i++) {
+        int bit = (int) Long.remainderUnsigned(h1 + i * h2, numBits);
+        if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    // finalizer of MurmurHash3, spreads the bits of each half of the id
+    private static long mix(long h) {
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Dispatches items onto a fixed number of lanes by the hash of their key. Lanes are processed
+ * concurrently, the items of one lane one at a time in arrival order, so items with the same key
+ * keep their order while a single consumer instance uses several cores.
+ *
+ * Per lane, the gauge messaging.lanes.depth shows the items dispatched to the lane and not yet
+ * processed, and the timer messaging.lanes.busy the time spent processing, its rate of total time
+ * is the share of time the lane is busy.
+ */
+public class KeyedLanes<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeyedLanes.class);
+
+  private final int lanes;
+  private final Function<T, Object> keyOf;
+  private final AtomicInteger[] depths;
+  private final Timer[] busy;
+
+  /**
+   * @param lanes number of lanes, 0 or less for one lane per available processor
+   */
+  public KeyedLanes(String name, int lanes, Function<T, Object> keyOf, MeterRegistry registry) {
+    this.lanes = (lanes > 0) ? lanes : Runtime.getRuntime().availableProcessors();
+    this.keyOf = keyOf;
+    this.depths = new AtomicInteger[this.lanes];
+    this.busy = new Timer[this.lanes];
+
+    LOG.info("Creates {} keyed lanes for {}", this.lanes, name);
+
+    for (int lane = 0; lane < this.lanes; lane++) {
+      depths[lane] = new AtomicInteger();
+      Gauge.builder("messaging.lanes.depth", depths[lane], AtomicInteger::get)
+              .description("Items dispatched to the lane and not yet processed")
+              .tag("name", name)
+              .tag("lane", String.valueOf(lane))
+              .register(registry);
+      busy[lane] = Timer.builder("messaging.lanes.busy")
+              .description("Time the lane spent processing items")
+              .tag("name", name)
+              .tag("lane", String.valueOf(lane))
+              .register(registry);
+    }
+  }
+
+  public Mono<Void> dispatch(Flux<T> items, Function<T, Mono<Void>> handler) {
+    return items
+            .groupBy(this::laneOf)
+            .flatMap(lane -> {
+              int index = lane.key();
+              // items of this lane not yet processed, those still queued when the lane is cancelled are taken off the depth
+              AtomicInteger pending = new AtomicInteger();
+              return lane
+                      .doOnNext(item -> {
+                        pending.incrementAndGet();
+                        depths[index].incrementAndGet();
+                      })
+                      .concatMap(item -> process(index, item, handler, pending))
+                      .doFinally(signal -> depths[index].addAndGet(-Math.max(0, pending.getAndSet(0))));
+            }, lanes)
+            .then();
+  }
+
+  public int getLanes() {
+    return lanes;
+  }
+
+  private Mono<Void> process(int lane, T item, Function<T, Mono<Void>> handler, AtomicInteger pending) {
+    return Mono.defer(() -> {
+      long start = System.nanoTime();
+      return Mono.defer(() -> handler.apply(item))
+              .doFinally(signal -> {
+                busy[lane].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                // not if the lane already took it off when it was cancelled
+                if (pending.decrementAndGet() >= 0) {
+                  depths[lane].decrementAndGet();
+                }
+              });
+    });
+  }
+
+  private int laneOf(T item) {
+    Object key = keyOf.apply(item);
+    return (key == null) ? 0 : Math.floorMod(key.hashCode(), lanes);
+  }
+}
@@ -0,0 +1,150 @@
+package mmajd.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Acknowledges the messages of a binding with manual acknowledgement once they are processed,
+ * so messages taken from the broker but not yet processed, queued in a lane or waiting for a
+ * retry, are redelivered if the consumer stops. Create one per binding.
+ *
+ * On RabbitMQ, acknowledgeMode MANUAL, each message is acked by its delivery tag, in any order.
+ * On Kafka, ackMode MANUAL, acknowledging a record commits the offsets of all earlier records of
+ * its partition, so a record is only acknowledged once every record received before it in the
+ * partition is processed as well. Messages of bindings with automatic acknowledgement are ignored.
+ */
+public class MessageAcks {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessageAcks.class);
+
+  // not carried over to a message built from a received one, they belong to the received message
+  static final String[] ACK_HEADERS = {AmqpHeaders.CHANNEL, KafkaHeaders.ACKNOWLEDGMENT, KafkaHeaders.CONSUMER};
+
+  private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+  /**
+   * Registers the Kafka records in the order they are received, call before they are reordered.
+   */
+  public <T> Flux<Message<T>> track(Flux<Message<T>> messages) {
+    return messages.doOnNext(message -> {
+      MessageHeaders headers = message.getHeaders();
+      if (headers.get(KafkaHeaders.ACKNOWLEDGMENT) instanceof Acknowledgment) {
+        partitions.computeIfAbsent(partitionOf(headers), name -> new Partition())
+                .received(offsetOf(headers));
+      }
+    });
+  }
+
+  /**
+   * The message is processed, or handed to a retry topic or the dead letter queue.
+   */
+  public void ack(Message<?> message) {
+    MessageHeaders headers = message.getHeaders();
+
+    Object channel = headers.get(AmqpHeaders.CHANNEL);
+    if (channel instanceof Channel) {
+      try {
+        ((Channel) channel).basicAck(deliveryTagOf(headers), false);
+      } catch (IOException ex) {
+        // the channel is closed, the broker redelivers the message
+        LOG.warn("Failed to ack message, it will be redelivered: {}", ex.toString());
+      }
+      return;
+    }
+
+    Object acknowledgment = headers.get(KafkaHeaders.ACKNOWLEDGMENT);
+    if (acknowledgment instanceof Acknowledgment) {
+      Partition partition = partitions.get(partitionOf(headers));
+      if (partition == null) {
+        ((Acknowledgment) acknowledgment).acknowledge();
+        return;
+      }
+      Acknowledgment last = partition.processed(offsetOf(headers), (Acknowledgment) acknowledgment);
+      if (last != null) {
+        last.acknowledge();
+      }
+    }
+  }
+
+  /**
+   * The message could neither be processed nor handed on, it is to be delivered again.
+   * On Kafka the record stays unacknowledged, so no later offset of its partition is committed
+   * and the partition is consumed again from it after a restart or rebalance.
+   */
+  public void requeue(Message<?> message) {
+    MessageHeaders headers = message.getHeaders();
+
+    Object channel = headers.get(AmqpHeaders.CHANNEL);
+    if (channel instanceof Channel) {
+      try {
+        ((Channel) channel).basicNack(deliveryTagOf(headers), false, true);
+      } catch (IOException ex) {
+        LOG.warn("Failed to requeue message, it will be redelivered: {}", ex.toString());
+      }
+      return;
+    }
+
+    if (headers.get(KafkaHeaders.ACKNOWLEDGMENT) instanceof Acknowledgment) {
+      LOG.error("Leaves record {} of {} unacknowledged, its partition is not committed past it until it is consumed again",
+              offsetOf(headers), partitionOf(headers));
+    }
+  }
+
+  private static long deliveryTagOf(MessageHeaders headers) {
+    return ((Number) headers.get(AmqpHeaders.DELIVERY_TAG)).longValue();
+  }
+
+  private static String partitionOf(MessageHeaders headers) {
+    return headers.get(KafkaHeaders.RECEIVED_TOPIC) + "-" + headers.get(KafkaHeaders.RECEIVED_PARTITION_ID);
+  }
+
+  private static long offsetOf(MessageHeaders headers) {
+    return ((Number) headers.get(KafkaHeaders.OFFSET)).longValue();
+  }
+
+  private static class Partition {
+    // offsets in the order they were received, and those of them already processed
+    private final Deque<Long> received = new ArrayDeque<>();
+    private final Map<Long, Acknowledgment> processed = new HashMap<>();
+
+    synchronized void received(long offset) {
+      Long last = received.peekLast();
+      if (last != null && offset <= last) {
+        // consumed again from an earlier offset after a rebalance or seek, earlier records are redelivered
+        received.clear();
+        processed.clear();
+      }
+      received.addLast(offset);
+    }
+
+    /**
+     * @return the acknowledgment of the last record of the processed prefix, null if the prefix did not grow
+     */
+    synchronized Acknowledgment processed(long offset, Acknowledgment acknowledgment) {
+      if (received.isEmpty() || offset < received.peekFirst()) {
+        // received before the partition was consumed again, it is redelivered
+        return null;
+      }
+      processed.put(offset, acknowledgment);
+      Acknowledgment last = null;
+      while (!received.isEmpty() && processed.containsKey(received.peekFirst())) {
+        last = processed.remove(received.pollFirst());
+      }
+      return last;
+    }
+  }
+}
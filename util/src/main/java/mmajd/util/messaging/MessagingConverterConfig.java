@@ -0,0 +1,31 @@
+package mmajd.util.messaging;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MessageConverter;
+
+/**
+ * Registers the CBOR converter with Spring Cloud Stream, next to its default JSON converter.
+ * Which one is used is decided by the content type of each binding.
+ */
+@Configuration
+public class MessagingConverterConfig {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MessagingConverterConfig.class);
+
+  @Bean
+  public MessageConverter cborMessageConverter(
+          Jackson2ObjectMapperBuilder builder,
+          @Value("${app.messaging.compression-threshold-bytes:1024}") int compressionThreshold) {
+
+    LOG.info("Registers a CBOR message converter, compression threshold = {} bytes", compressionThreshold);
+
+    // same modules and features as the JSON mapper, for example for the ZonedDateTime of events
+    return new CborMessageConverter(builder.factory(new CBORFactory()).build(), compressionThreshold);
+  }
+}
@@ -0,0 +1,117 @@
+package mmajd.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes event messages without blocking, messages are dispatched to it by KeyedLanes.
+ * Reactive bindings get no retries or dead lettering from the binder, a failing message is retried
+ * here with exponential backoff and, once out of attempts, handed to the dead letter sender
+ * with the error in the x-exception-message header. The stream continues with the next message.
+ * With {@link RetryTopics} a failing message is not retried here but republished to the first retry tier.
+ * A message is acked once it is processed or handed on, so with manual acknowledgement a message
+ * still queued or waiting for a retry is redelivered if the consumer stops. A message that could
+ * not be handed on is requeued.
+ */
+public class ReactiveEventProcessor<E> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReactiveEventProcessor.class);
+
+  public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+
+  private final int maxAttempts;
+  private final Duration initialBackoff;
+  private final Duration maxBackoff;
+  private final Function<E, Mono<Void>> handler;
+  private final Consumer<Message<?>> deadLetters;
+  private final RetryTopics retryTopics;
+  private final MessageAcks acks;
+
+  /**
+   * @param maxAttempts attempts per message including the first, as the binder's consumer maxAttempts
+   */
+  public ReactiveEventProcessor(
+          int maxAttempts,
+          Duration initialBackoff,
+          Duration maxBackoff,
+          Function<E, Mono<Void>> handler,
+          Consumer<Message<?>> deadLetters,
+          MessageAcks acks) {
+
+    LOG.info("Creates a reactive event processor with {} attempts per message", maxAttempts);
+
+    this.maxAttempts = maxAttempts;
+    this.initialBackoff = initialBackoff;
+    this.maxBackoff = maxBackoff;
+    this.handler = handler;
+    this.deadLetters = deadLetters;
+    this.retryTopics = null;
+    this.acks = acks;
+  }
+
+  public ReactiveEventProcessor(Function<E, Mono<Void>> handler, RetryTopics retryTopics, MessageAcks acks) {
+    LOG.info("Creates a reactive event processor with retry topics");
+
+    this.maxAttempts = 1;
+    this.initialBackoff = Duration.ZERO;
+    this.maxBackoff = Duration.ZERO;
+    this.handler = handler;
+    this.deadLetters = null;
+    this.retryTopics = retryTopics;
+    this.acks = acks;
+  }
+
+  /**
+   * Processes one message with retries, a message that keeps failing goes to the dead letter queue.
+   */
+  public Mono<Void> processMessage(Message<E> message) {
+    Mono<Void> processed = Mono.defer(() -> handler.apply(message.getPayload()));
+    if (maxAttempts > 1) {
+      processed = processed.retryWhen(Retry.backoff(maxAttempts - 1, initialBackoff)
+              .maxBackoff(maxBackoff)
+              .doBeforeRetry(signal -> LOG.warn("Retries message, attempt {}: {}",
+                      signal.totalRetries() + 2, signal.failure().toString()))
+              .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    return processed
+            .doOnSuccess(done -> acks.ack(message))
+            .onErrorResume(ex -> Mono.fromRunnable(() -> handOn(message, ex)));
+  }
+
+  // an error would end the stream and with it the binding, the message is requeued instead
+  private void handOn(Message<E> message, Throwable failure) {
+    if (retryTopics != null) {
+      try {
+        retryTopics.retryLater(message, failure);
+      } catch (RuntimeException retryEx) {
+        LOG.error("Failed to send message to its retry topic, requeues it: {}", message, retryEx);
+        acks.requeue(message);
+        return;
+      }
+      acks.ack(message);
+      return;
+    }
+
+    LOG.error("Failed to process message after {} attempts, sends it to the dead letter queue", maxAttempts, failure);
+    try {
+      deadLetters.accept(MessageBuilder.fromMessage(message)
+              .removeHeaders(MessageAcks.ACK_HEADERS)
+              .setHeader(EXCEPTION_MESSAGE_HEADER, String.valueOf(failure.getMessage()))
+              .build());
+    } catch (RuntimeException dlqEx) {
+      LOG.error("Failed to send message to the dead letter queue, requeues it: {}", message, dlqEx);
+      acks.requeue(message);
+      return;
+    }
+    acks.ack(message);
+  }
+}
@@ -0,0 +1,113 @@
+package mmajd.util.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Tiered retries without blocking the consumer: a failed message is republished to the retry
+ * destination of its next attempt, retry-1, retry-2 and so on, with its attempt in the retryAttempt
+ * header and the earliest time to process it again, in epoch millis, in the retryAt header.
+ * Each tier has a fixed delay, so the messages of a retry destination are due in the order they
+ * arrive, and its consumer only waits for the message at its head. Once out of tiers a message
+ * goes to the dead letter queue. The main consumer goes on with the next message right away.
+ *
+ * Retried messages are processed after later messages of the same key. The handler of the retry
+ * destinations is to drop a retried event that a later event of its key already superseded, see
+ * {@link EventDeduplicator#isSuperseded}, so for example a CREATE retried after a later DELETE of
+ * the key does not bring the entity back.
+ */
+public class RetryTopics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RetryTopics.class);
+
+  public static final String RETRY_ATTEMPT_HEADER = "retryAttempt";
+  public static final String RETRY_AT_HEADER = "retryAt";
+
+  private final boolean enabled;
+  private final List<Duration> delays;
+  private final BiConsumer<String, Message<?>> sender;
+
+  /**
+   * @param delays delay of each tier, the message of attempt n is sent to binding retry{n}-out-0
+   * @param sender sends a message to an output binding, the dead letter queue is deadLetters-out-0
+   */
+  public RetryTopics(boolean enabled, List<Duration> delays, BiConsumer<String, Message<?>> sender) {
+    LOG.info("Creates retry topics, enabled = {}, delays = {}", enabled, delays);
+
+    this.enabled = enabled;
+    this.delays = delays;
+    this.sender = sender;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Sends the message to the retry destination of its next attempt, or to the dead letter queue.
+   * Throws if the message could not be sent.
+   */
+  public void retryLater(Message<?> message, Throwable failure) {
+    int attempt = attemptOf(message) + 1;
+    MessageBuilder<?> retry = MessageBuilder.fromMessage(message)
+            .removeHeaders(MessageAcks.ACK_HEADERS)
+            .setHeader(ReactiveEventProcessor.EXCEPTION_MESSAGE_HEADER, String.valueOf(failure.getMessage()));
+
+    if (attempt > delays.size()) {
+      LOG.warn("Message failed after {} retries, sends it to the dead letter queue: {}", delays.size(), failure.toString());
+      sender.accept("deadLetters-out-0", retry.build());
+      return;
+    }
+
+    long retryAt = System.currentTimeMillis() + delays.get(attempt - 1).toMillis();
+    LOG.info("Message failed, retries it in {} ms, attempt {}: {}", delays.get(attempt - 1).toMillis(), attempt, failure.toString());
+    sender.accept("retry" + attempt + "-out-0", retry
+            .setHeader(RETRY_ATTEMPT_HEADER, attempt)
+            .setHeader(RETRY_AT_HEADER, retryAt)
+            .build());
+  }
+
+  /**
+   * Processes the messages of one retry destination, each once it is due. A message is acked once
+   * it is processed or sent on to its next tier, one that could not be sent on is requeued.
+   */
+  public <E> Mono<Void> processRetries(Flux<Message<E>> messages, Function<E, Mono<Void>> handler, MessageAcks acks) {
+    return acks.track(messages)
+            .concatMap(message -> Mono.delay(Duration.ofMillis(Math.max(0, retryAtOf(message) - System.currentTimeMillis())))
+                    .then(Mono.defer(() -> handler.apply(message.getPayload())))
+                    .doOnSuccess(done -> acks.ack(message))
+                    .onErrorResume(ex -> Mono.fromRunnable(() -> retryLaterOrRequeue(message, ex, acks))))
+            .then();
+  }
+
+  // an error would end the stream and with it the binding, the message is requeued instead
+  private void retryLaterOrRequeue(Message<?> message, Throwable failure, MessageAcks acks) {
+    try {
+      retryLater(message, failure);
+    } catch (RuntimeException ex) {
+      LOG.error("Failed to send message to its next retry topic, requeues it: {}", message, ex);
+      acks.requeue(message);
+      return;
+    }
+    acks.ack(message);
+  }
+
+  private int attemptOf(Message<?> message) {
+    Object attempt = message.getHeaders().get(RETRY_ATTEMPT_HEADER);
+    return (attempt == null) ? 0 : Integer.parseInt(attempt.toString());
+  }
+
+  private long retryAtOf(Message<?> message) {
+    Object retryAt = message.getHeaders().get(RETRY_AT_HEADER);
+    return (retryAt == null) ? 0 : Long.parseLong(retryAt.toString());
+  }
+}
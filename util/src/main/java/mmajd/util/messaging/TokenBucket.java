@@ -0,0 +1,41 @@
+package mmajd.util.messaging;
+
+import java.time.Duration;
+
+/**
+ * Token bucket refilled at a fixed rate, holding at most burst tokens. A caller reserves a
+ * token and is told how long to wait for it, tokens may be reserved ahead so callers that
+ * wait in turn are spaced out at the rate.
+ */
+public class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double burst;
+
+  private double tokens;
+  private long refilledAt;
+
+  public TokenBucket(double ratePerSecond, int burst) {
+    if (ratePerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst must be positive, got rate = " + ratePerSecond + ", burst = " + burst);
+    }
+    this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+    this.burst = burst;
+    this.tokens = burst;
+    this.refilledAt = System.nanoTime();
+  }
+
+  /**
+   * Takes a token, possibly one not yet refilled.
+   *
+   * @return how long to wait before using the token, zero if it was available
+   */
+  public synchronized Duration reserve() {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+    refilledAt = now;
+
+    tokens -= 1;
+    return (tokens >= 0) ? Duration.ZERO : Duration.ofNanos((long) Math.ceil(-tokens / tokensPerNano));
+  }
+}
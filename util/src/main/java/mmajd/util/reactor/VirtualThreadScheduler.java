@@ -0,0 +1,189 @@
+package mmajd.util.reactor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler that runs each task on a new virtual thread, for blocking calls such as JDBC.
+ * At most maxConcurrency tasks run at a time, the others wait for a permit on their own
+ * virtual thread instead of in a bounded queue. Virtual threads need Java 21, the modules
+ * are compiled for Java 8, so the thread factory is looked up by reflection at runtime.
+ *
+ * A virtual thread that blocks inside synchronized code pins its carrier thread on Java 21.
+ * The MySQL driver 8.0 reads its results and Hikari hands out connections in synchronized
+ * code, so with at least as many concurrent JDBC calls as carriers, one per core by default,
+ * every carrier can be pinned and no other virtual thread runs until a call returns. Raise
+ * jdk.virtualThreadScheduler.parallelism above maxConcurrency for such tasks, checkSupported
+ * fails the startup when it is not.
+ */
+public final class VirtualThreadScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadScheduler.class);
+
+  private VirtualThreadScheduler() {
+  }
+
+  public static boolean isSupported() {
+    return virtualThreadFactory("probe-") != null;
+  }
+
+  /**
+   * Checks at startup that the option enabling virtual threads can be used in this JVM, for
+   * maxConcurrency tasks that may block in synchronized code. Before Java 24 such tasks pin
+   * their carrier, so there must be more carriers than tasks.
+   *
+   * @param property name of the option, for the error message
+   * @throws IllegalStateException if virtual threads are not supported or the tasks can pin every carrier
+   */
+  public static void checkSupported(String property, int maxConcurrency) {
+    if (!isSupported()) {
+      throw new IllegalStateException(property + " is enabled, but virtual threads require Java 21 or later, running on " +
+              System.getProperty("java.version") + ", set " + property + " to false");
+    }
+
+    int carriers = carriers();
+    if (javaVersion() < 24 && carriers <= maxConcurrency) {
+      throw new IllegalStateException(property + " is enabled for " + maxConcurrency + " concurrent tasks, but only " +
+              carriers + " carrier threads can run them and tasks blocking in synchronized code pin their carrier before Java 24, " +
+              "set -Djdk.virtualThreadScheduler.parallelism above " + maxConcurrency + " or " + property + " to false");
+    }
+  }
+
+  /**
+   * @throws IllegalStateException if the JVM does not support virtual threads
+   */
+  public static Scheduler create(String name, int maxConcurrency) {
+    ThreadFactory factory = virtualThreadFactory(name + "-");
+    if (factory == null) {
+      throw new IllegalStateException("Virtual threads require Java 21 or later, running on " + System.getProperty("java.version"));
+    }
+
+    LOG.info("Creates a virtual thread scheduler {} with at most {} concurrent tasks", name, maxConcurrency);
+    int carriers = carriers();
+    if (carriers <= maxConcurrency) {
+      LOG.warn("Only {} carrier threads for {} concurrent tasks of {}, tasks blocking in synchronized code can pin all of them, " +
+              "set jdk.virtualThreadScheduler.parallelism higher", carriers, maxConcurrency, name);
+    }
+    return Schedulers.fromExecutorService(new BoundedThreadPerTaskExecutor(factory, maxConcurrency), name);
+  }
+
+  /**
+   * Scheduler that runs its tasks one after the other, in the order they were scheduled,
+   * on a single virtual thread.
+   *
+   * @throws IllegalStateException if the JVM does not support virtual threads
+   */
+  public static Scheduler createSingle(String name) {
+    ThreadFactory factory = virtualThreadFactory(name + "-");
+    if (factory == null) {
+      throw new IllegalStateException("Virtual threads require Java 21 or later, running on " + System.getProperty("java.version"));
+    }
+    return Schedulers.fromExecutorService(Executors.newSingleThreadExecutor(factory), name);
+  }
+
+  private static int carriers() {
+    return Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+  }
+
+  // 1.8 before Java 9, then the feature version
+  private static int javaVersion() {
+    String version = System.getProperty("java.specification.version");
+    return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+  }
+
+  // Thread.ofVirtual().name(prefix, 0).factory()
+  private static ThreadFactory virtualThreadFactory(String prefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+      return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException ex) {
+      return null;
+    }
+  }
+
+  private static class BoundedThreadPerTaskExecutor extends AbstractExecutorService {
+    private final ThreadFactory factory;
+    private final Semaphore permits;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown = false;
+
+    BoundedThreadPerTaskExecutor(ThreadFactory factory, int maxConcurrency) {
+      this.factory = factory;
+      this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      if (shutdown) {
+        throw new RejectedExecutionException("Scheduler is shut down");
+      }
+
+      Thread thread = factory.newThread(() -> {
+        try {
+          permits.acquire();
+        } catch (InterruptedException ex) {
+          // cancelled while waiting for a permit
+          threads.remove(Thread.currentThread());
+          return;
+        }
+        try {
+          task.run();
+        } finally {
+          permits.release();
+          threads.remove(Thread.currentThread());
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    @Override
+    public void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      shutdown = true;
+      threads.forEach(Thread::interrupt);
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return shutdown && threads.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (!isTerminated()) {
+        if (System.nanoTime() - deadline > 0) {
+          return false;
+        }
+        Thread.sleep(10);
+      }
+      return true;
+    }
+  }
+}
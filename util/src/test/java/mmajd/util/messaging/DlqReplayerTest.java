@@ -0,0 +1,97 @@
+package mmajd.util.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class DlqReplayerTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private final Channel channel = mock(Channel.class);
+
+  private final List<String> bindings = new ArrayList<>();
+  private final List<Message<?>> sent = new ArrayList<>();
+  private final AtomicBoolean failing = new AtomicBoolean();
+
+  private final DlqReplayer replayer = new DlqReplayer(
+          message -> {
+            try {
+              return mapper.readTree(message.getPayload());
+            } catch (IOException ex) {
+              throw new UncheckedIOException(ex);
+            }
+          },
+          (binding, message) -> {
+            if (failing.get()) {
+              throw new IllegalStateException("Failed to send message to " + binding);
+            }
+            bindings.add(binding);
+            sent.add(message);
+          },
+          start -> { },
+          10);
+
+  @Test
+  void parkedMessagesAreAckedOnceReplayedOrParkedAgain() throws IOException {
+    replayer.start(DlqReplayer.Filter.of("CREATE", null, null), 1000);
+    Message<?> marker = sent.get(0);
+
+    replayer.replay(Flux.just(
+            parkedMessage("{\"eventType\":\"CREATE\",\"key\":1}", 1),
+            parkedMessage("{\"eventType\":\"DELETE\",\"key\":1}", 2),
+            MessageBuilder.withPayload(new byte[0])
+                    .setHeader(DlqReplayer.REPLAY_MARKER_HEADER, marker.getHeaders().get(DlqReplayer.REPLAY_MARKER_HEADER))
+                    .setHeader(AmqpHeaders.CHANNEL, channel)
+                    .setHeader(AmqpHeaders.DELIVERY_TAG, 3L)
+                    .build())).block();
+
+    verify(channel).basicAck(1L, false);
+    verify(channel).basicAck(2L, false);
+    verify(channel).basicAck(3L, false);
+    verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+
+    assertEquals(DlqReplayer.REPLAY_BINDING, bindings.get(1));
+    assertEquals(DlqReplayer.DEAD_LETTERS_BINDING, bindings.get(2));
+    // the channel belongs to the received message, not to the one sent on
+    assertNull(sent.get(1).getHeaders().get(AmqpHeaders.CHANNEL));
+    assertNull(sent.get(2).getHeaders().get(AmqpHeaders.CHANNEL));
+    assertEquals(DlqReplayer.State.COMPLETED, replayer.progress().getState());
+  }
+
+  @Test
+  void messageThatCanNeitherBeReplayedNorParkedIsDeliveredAgain() throws IOException {
+    replayer.start(DlqReplayer.Filter.of("", null, null), 1000);
+    failing.set(true);
+
+    replayer.replay(Flux.just(parkedMessage("{\"eventType\":\"CREATE\",\"key\":1}", 1))).block();
+
+    verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    verify(channel).basicNack(1L, false, true);
+  }
+
+  private Message<byte[]> parkedMessage(String event, long deliveryTag) {
+    return MessageBuilder.withPayload(event.getBytes())
+            .setHeader(AmqpHeaders.CHANNEL, channel)
+            .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+            .build();
+  }
+}
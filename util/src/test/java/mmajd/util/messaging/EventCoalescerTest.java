@@ -0,0 +1,84 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mmajd.api.event.Event;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Operators;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EventCoalescerTest {
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  private final EventCoalescer coalescer = new EventCoalescer(Duration.ofMillis(20), 10000, registry);
+
+  @Test
+  void eventsBeforeADeleteOfTheSameKeyAreDropped() {
+    List<Message<Event<Integer, String>>> superseded = new ArrayList<>();
+
+    // all held keys are passed on when the upstream completes, in order of their first event
+    StepVerifier.create(coalescer.coalesce(Flux.just(message(CREATE, 1), message(CREATE, 2), message(DELETE, 1)), superseded::add))
+            .assertNext(message -> assertEvent(DELETE, 1, message))
+            .assertNext(message -> assertEvent(CREATE, 2, message))
+            .verifyComplete();
+
+    assertEquals(1, superseded.size());
+    assertEvent(CREATE, 1, superseded.get(0));
+    assertEquals(1.0, registry.get("messaging.events.coalesced").counter().count());
+  }
+
+  @Test
+  void upstreamIsRequestedAsDownstreamRequests() {
+    AtomicLong requested = new AtomicLong();
+    Flux<Message<Event<Integer, String>>> messages = Flux.range(0, 1000)
+            .map(key -> message(CREATE, key))
+            .doOnRequest(n -> requested.accumulateAndGet(n, Operators::addCap));
+
+    StepVerifier.create(coalescer.coalesce(messages, message -> { }), 10)
+            .expectNextCount(10)
+            .expectNoEvent(Duration.ofMillis(100))
+            .then(() -> assertEquals(10, requested.get()))
+            .thenRequest(5)
+            .expectNextCount(5)
+            .then(() -> assertEquals(15, requested.get()))
+            .thenCancel()
+            .verify(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void droppedEventsAreRequestedAgain() {
+    AtomicLong requested = new AtomicLong();
+    Flux<Message<Event<Integer, String>>> messages = Flux.just(message(CREATE, 1), message(DELETE, 1), message(CREATE, 2))
+            .doOnRequest(n -> requested.accumulateAndGet(n, Operators::addCap));
+
+    // the create of key 1 took one of the two requested without being emitted, so the create of key 2 is requested too
+    StepVerifier.create(coalescer.coalesce(messages, message -> { }), 2)
+            .assertNext(message -> assertEvent(DELETE, 1, message))
+            .assertNext(message -> assertEvent(CREATE, 2, message))
+            .verifyComplete();
+
+    assertEquals(3, requested.get());
+  }
+
+  private void assertEvent(Event.Type type, int key, Message<Event<Integer, String>> message) {
+    assertEquals(type, message.getPayload().getEventType());
+    assertEquals(key, (int) message.getPayload().getKey());
+  }
+
+  private Message<Event<Integer, String>> message(Event.Type type, int key) {
+    return MessageBuilder.withPayload(new Event<Integer, String>(type, key, null)).build();
+  }
+}
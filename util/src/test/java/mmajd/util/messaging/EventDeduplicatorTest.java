@@ -0,0 +1,132 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mmajd.api.event.Event;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static mmajd.api.event.Event.Type.CREATE;
+import static mmajd.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventDeduplicatorTest {
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  @Test
+  void redeliveredEventIsDropped() {
+    EventDeduplicator deduplicator = new EventDeduplicator(100, 1000, 0.01, registry);
+    AtomicInteger handled = new AtomicInteger();
+    Event<Integer, String> event = new Event<>(CREATE, 1, "1");
+
+    deduplicator.process(event, e -> Mono.fromRunnable(handled::incrementAndGet)).block();
+    deduplicator.process(event, e -> Mono.fromRunnable(handled::incrementAndGet)).block();
+
+    assertEquals(1, handled.get());
+    assertEquals(1, registry.get("messaging.events.duplicates").counter().count());
+  }
+
+  @Test
+  void failedEventIsNotRemembered() {
+    EventDeduplicator deduplicator = new EventDeduplicator(100, 1000, 0.01, registry);
+    Event<Integer, String> event = new Event<>(CREATE, 1, "1");
+
+    assertThrows(IllegalStateException.class, () ->
+            deduplicator.process(event, e -> Mono.<Void>error(new IllegalStateException("failed"))).block());
+
+    assertFalse(deduplicator.isDuplicate(event));
+  }
+
+  @Test
+  void versionOneEventWithoutIdIsNeverDropped() {
+    EventDeduplicator deduplicator = new EventDeduplicator(100, 1000, 0.01, registry);
+    AtomicInteger handled = new AtomicInteger();
+    // as read from a version 1 message, no event id
+    Event<Integer, String> event = new Event<>();
+
+    deduplicator.process(event, e -> Mono.fromRunnable(handled::incrementAndGet)).block();
+    deduplicator.process(event, e -> Mono.fromRunnable(handled::incrementAndGet)).block();
+
+    assertEquals(2, handled.get());
+  }
+
+  @Test
+  void idsOfTheLruAreFoundAfterTheBloomFilterIsReplaced() {
+    // the Bloom filter is replaced after every 4 ids, twice for 10 events
+    EventDeduplicator deduplicator = new EventDeduplicator(4, 4, 0.01, registry);
+    List<Event<Integer, String>> events = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Event<Integer, String> event = new Event<>(CREATE, i, String.valueOf(i));
+      events.add(event);
+      deduplicator.markProcessed(event);
+    }
+
+    for (int i = 6; i < 10; i++) {
+      assertTrue(deduplicator.isDuplicate(events.get(i)), "Event " + i + " is still in the LRU");
+    }
+    for (int i = 0; i < 6; i++) {
+      assertFalse(deduplicator.isDuplicate(events.get(i)), "Event " + i + " is evicted from the LRU");
+    }
+  }
+
+  @Test
+  void lruLargerThanTheBloomFilterIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> new EventDeduplicator(1000, 100, 0.01, registry));
+  }
+
+  @Test
+  void processAllSkipsDuplicatesAndAnswersFailedPositionsOfTheWholeList() {
+    EventDeduplicator deduplicator = new EventDeduplicator(100, 1000, 0.01, registry);
+    Event<Integer, String> processed = new Event<>(CREATE, 1, "1");
+    Event<Integer, String> failing = new Event<>(CREATE, 2, "2");
+    Event<Integer, String> fresh = new Event<>(CREATE, 3, "3");
+    deduplicator.markProcessed(processed);
+
+    List<List<Event<Integer, String>>> handed = new ArrayList<>();
+    Set<Integer> failed = deduplicator.processAll(Arrays.asList(processed, failing, fresh), events -> {
+      handed.add(events);
+      // the failing event is the first of the events handed to the bulk handler
+      return Mono.just(new HashSet<>(Collections.singletonList(0)));
+    }).block();
+
+    assertEquals(Collections.singletonList(Arrays.asList(failing, fresh)), handed);
+    assertEquals(Collections.singleton(1), failed);
+    assertTrue(deduplicator.isDuplicate(fresh));
+    assertFalse(deduplicator.isDuplicate(failing));
+  }
+
+  @Test
+  void retriedEventIsSupersededByALaterEventOfItsKey() throws InterruptedException {
+    EventDeduplicator deduplicator = new EventDeduplicator(100, 1000, 0.01, registry);
+    Event<Integer, String> create = new Event<>(CREATE, 1, "1");
+    Event<Integer, String> delete = new Event<>(DELETE, 1, null);
+    Thread.sleep(5);
+    Event<Integer, String> laterCreate = new Event<>(CREATE, 1, "1");
+    Event<Integer, String> otherKey = new Event<>(CREATE, 2, "2");
+
+    deduplicator.markProcessed(laterCreate);
+    // a DELETE is undone by any later event, a CREATE only by a later DELETE
+    assertTrue(deduplicator.isSuperseded(delete));
+    assertFalse(deduplicator.isSuperseded(create));
+
+    Thread.sleep(5);
+    deduplicator.markProcessed(new Event<Integer, String>(DELETE, 1, null));
+    assertTrue(deduplicator.isSuperseded(create));
+    assertTrue(deduplicator.isSuperseded(laterCreate));
+    assertFalse(deduplicator.isSuperseded(otherKey));
+    assertFalse(deduplicator.isSuperseded(new Event<>()));
+    assertEquals(3, registry.get("messaging.events.superseded").counter().count());
+  }
+}
@@ -0,0 +1,105 @@
+package mmajd.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedLanesTest {
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+
+  private final KeyedLanes<int[]> lanes = new KeyedLanes<>("test", 4, item -> item[0], registry);
+
+  @Test
+  void itemsOfAKeyKeepTheirOrderWhileLanesRunConcurrently() {
+    Map<Integer, List<Integer>> processed = new ConcurrentHashMap<>();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    // keys interleaved, item[0] is the key and item[1] its sequence number
+    List<int[]> items = new ArrayList<>();
+    for (int seq = 0; seq < 20; seq++) {
+      for (int key = 0; key < 10; key++) {
+        items.add(new int[]{key, seq});
+      }
+    }
+
+    lanes.dispatch(Flux.fromIterable(items), item -> Mono.defer(() -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              // later items of a key finish faster, they would overtake earlier ones without the lanes
+              return Mono.delay(Duration.ofMillis(item[1] % 2 == 0 ? 3 : 1));
+            })
+            .doOnSuccess(done -> {
+              inFlight.decrementAndGet();
+              processed.computeIfAbsent(item[0], key -> Collections.synchronizedList(new ArrayList<>())).add(item[1]);
+            })
+            .then())
+            .block(Duration.ofSeconds(10));
+
+    assertEquals(10, processed.size());
+    processed.forEach((key, sequence) -> {
+      assertEquals(20, sequence.size());
+      for (int seq = 0; seq < 20; seq++) {
+        assertEquals(seq, (int) sequence.get(seq), "Order of key " + key);
+      }
+    });
+    assertTrue(maxInFlight.get() > 1, "Lanes were processed one at a time");
+  }
+
+  @Test
+  void depthReturnsToZeroAndBusyTimeIsRecorded() {
+    List<int[]> items = new ArrayList<>();
+    for (int key = 0; key < 8; key++) {
+      items.add(new int[]{key, 0});
+      items.add(new int[]{key, 1});
+    }
+
+    lanes.dispatch(Flux.fromIterable(items), item -> Mono.delay(Duration.ofMillis(5)).then())
+            .block(Duration.ofSeconds(10));
+
+    long count = 0;
+    double totalMs = 0;
+    for (int lane = 0; lane < 4; lane++) {
+      assertEquals(0, depth(lane), "Depth of lane " + lane);
+      Timer busy = registry.get("messaging.lanes.busy").tag("lane", String.valueOf(lane)).timer();
+      count += busy.count();
+      totalMs += busy.totalTime(TimeUnit.MILLISECONDS);
+    }
+    assertEquals(16, count);
+    assertTrue(totalMs >= 16 * 5, "Busy time of " + totalMs + " ms");
+  }
+
+  @Test
+  void depthOfQueuedItemsIsTakenOffWhenCancelled() {
+    // all items of key 0 in one lane, the first never finishes and the others stay queued
+    Disposable dispatch = lanes.dispatch(Flux.range(0, 5).map(seq -> new int[]{0, seq}), item -> Mono.never())
+            .subscribe();
+
+    int lane = Math.floorMod(Integer.valueOf(0).hashCode(), 4);
+    assertEquals(5, depth(lane));
+
+    dispatch.dispose();
+
+    assertEquals(0, depth(lane));
+  }
+
+  private double depth(int lane) {
+    return registry.get("messaging.lanes.depth").tag("lane", String.valueOf(lane)).gauge().value();
+  }
+}
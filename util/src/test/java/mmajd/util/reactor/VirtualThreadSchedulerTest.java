@@ -0,0 +1,46 @@
+package mmajd.util.reactor;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadSchedulerTest {
+
+  @Test
+  void enabledOptionFailsTheStartupWithoutVirtualThreads() {
+    assumeFalse(VirtualThreadScheduler.isSupported(), "Virtual threads are supported");
+
+    IllegalStateException ex = assertThrows(IllegalStateException.class,
+            () -> VirtualThreadScheduler.checkSupported("app.test.virtual-threads", 1));
+    assertTrue(ex.getMessage().contains("app.test.virtual-threads"));
+  }
+
+  @Test
+  void singleSchedulerRunsTasksInOrder() {
+    assumeTrue(VirtualThreadScheduler.isSupported(), "Virtual threads require Java 21");
+
+    Scheduler scheduler = VirtualThreadScheduler.createSingle("test-single");
+    try {
+      List<Integer> ran = new ArrayList<>();
+      Flux.range(0, 100)
+              .flatMap(i -> Mono.fromRunnable(() -> ran.add(i)).subscribeOn(scheduler), 100)
+              .blockLast();
+
+      for (int i = 0; i < 100; i++) {
+        assertEquals(i, ran.get(i));
+      }
+    } finally {
+      scheduler.dispose();
+    }
+  }
+}